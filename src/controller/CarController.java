@@ -1,12 +1,13 @@
 package controller;
 
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import tiles.MapTile;
 import utilities.Coordinate;
 import world.Car;
-import world.World;
+import world.CarView;
 import world.WorldSpatial;
 
 public abstract class CarController {
@@ -83,6 +84,14 @@ public abstract class CarController {
 	public HashMap<Coordinate,MapTile> getView(){
 		return car.getView();
 	}
+
+	/**
+	 * Returns the same view as getView() without copying it: a window onto the world around your car, which moves
+	 * with it
+	 */
+	public CarView getCarView(){
+		return car.getCarView();
+	}
 	
 	/**
 	 * Get the distance the car can see
@@ -113,24 +122,39 @@ public abstract class CarController {
 	}
 	
 	/*
-	 * Get visible map
+	 * Get visible map, as a read-only view
+	 */
+	public Map<Coordinate,MapTile> getMap(){
+		return car.getMap();
+	}
+	
+	/**
+	 * Get one tile of the visible map, without making a Coordinate as getMap() lookups do
+	 * @return The tile, or null where getMap() has none
 	 */
-	public HashMap<Coordinate,MapTile> getMap(){
-		return World.getMap();
+	public MapTile getMapTile(int x, int y) {
+		return car.getMapTile(x, y);
 	}
 	
 	/*
 	 * Get map height
 	 */
 	public int mapHeight() {
-		return World.MAP_HEIGHT;
+		return car.getMapHeight();
 	}
 	
 	/*
 	 * Get map width
 	 */
 	public int mapWidth() {
-		return World.MAP_WIDTH;
+		return car.getMapWidth();
+	}
+	
+	/**
+	 * Number of searches that have run past their time budget, for controllers that give their searches one
+	 */
+	public long getBudgetOverruns() {
+		return 0;
 	}
 	
 	/**
@@ -5,15 +5,43 @@ import utilities.Coordinate;
 
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
 
 import static world.WorldSpatial.Direction;
 
 
 public class AStarSearch extends SearchStrategy {
+    private static final int PATH_CACHE_SIZE = 32;
+
     private List<RelativeDirection> mDirections;
     private List<Coordinate> mPath;
     private List<List<Coordinate>> mPastPaths;
+    /**
+     * Buffer for the neighbours of the node being expanded
+     */
+    private final int[] mNeighbours = new int[4];
+    /**
+     * Plans the order keys are collected in
+     */
+    private final KeyTourPlanner mKeyTourPlanner = new KeyTourPlanner(this);
+    /**
+     * Paths found by recent searches
+     */
+    private final PathCache mPathCache = new PathCache(PATH_CACHE_SIZE);
+    private final BidirectionalAStar mBidirectionalSearch = new BidirectionalAStar(this);
+    /**
+     * Used instead of a full search while there is a time budget
+     */
+    private final AnytimeAStar mAnytimeSearch = new AnytimeAStar(this);
+    /**
+     * Whether search() meets in the middle rather than searching from the start only
+     */
+    private boolean mBidirectional;
+    /**
+     * Keys held by lava on the map last searched, found once per version of the map while searches are bidirectional
+     */
+    private Set<Integer> mKeysOnMap = new HashSet<>();
+    private HashMap<Coordinate, MapTile> mKeysOnMapMap;
+    private int mKeysOnMapVersion;
 
     public AStarSearch() {
         mDirections = new ArrayList<>();
@@ -29,18 +57,22 @@ public class AStarSearch extends SearchStrategy {
         mDirections = new ArrayList<>();
         mPath = new ArrayList<>();
 
-        if (intermediateGoals.isEmpty() && finalGoals.isEmpty()) {
+        startBudget();
+        Coordinate goal = chooseGoal(map, initialPos, intermediateGoals, finalGoals, keysCollected);
+        if (goal == null) {
+            endBudget();
             return;
         }
-
-        if (intermediateGoals.isEmpty()) {
-            mPath.addAll(search(map, initialPos, nearestFinalGoal(initialPos, finalGoals), keysCollected));
-        } else {
-            intermediateGoals.sort(Comparator.comparingInt(c -> manhattanDistance(c,
-                    nearestFinalGoal(c, finalGoals))));
-            Collections.reverse(intermediateGoals);
-            intermediateGoals.sort(Comparator.comparingInt(c -> manhattanDistance(initialPos, c)));
-            mPath.addAll(search(map, initialPos, intermediateGoals.get(0), keysCollected));
+        mPath.addAll(cachedSearch(map, initialPos, goal, keysCollected));
+        endBudget();
+        if (isCancelled()) {
+            // What was found isn't a path to follow, so keep it out of the history
+            mPath = new ArrayList<>();
+            return;
+        }
+        if (mPath.isEmpty()) {
+            // There is no way to the goal, which isn't thrashing, and a past path from elsewhere would lead astray
+            return;
         }
 
         if (!mPastPaths.contains(mPath)) {
@@ -57,6 +89,41 @@ public class AStarSearch extends SearchStrategy {
         mDirections = toRelativeDirection(mPath, initialOrientation);
     }
 
+    /**
+     * Choose the goal to head for. Intermediate goals come first, in the order of the shortest tour through them to
+     * an exit, then the nearest final goal.
+     *
+     * @param map               Map we're navigating on
+     * @param initialPos        Car's position
+     * @param intermediateGoals Goals to reach before any final goal
+     * @param finalGoals        Goals to finish on
+     * @param keysCollected     Keys the car already has
+     * @return Goal to head for, or null if there are no goals
+     */
+    protected Coordinate chooseGoal(HashMap<Coordinate, MapTile> map, Coordinate initialPos,
+                                    List<Coordinate> intermediateGoals, List<Coordinate> finalGoals,
+                                    Set<Integer> keysCollected) {
+        if (intermediateGoals.isEmpty() && finalGoals.isEmpty()) {
+            return null;
+        }
+
+        if (intermediateGoals.isEmpty()) {
+            return nearestFinalGoal(initialPos, finalGoals);
+        }
+        // Go to the key that starts the shortest tour through all the keys to an exit
+        Coordinate nextGoal = mKeyTourPlanner.nextKey(map, getMapVersion(), initialPos, intermediateGoals,
+                finalGoals, keysCollected);
+        if (nextGoal == null) {
+            // The goals aren't keys the tour can be planned for, so just go to the nearest
+            intermediateGoals.sort(Comparator.comparingInt(c -> manhattanDistance(c,
+                    nearestFinalGoal(c, finalGoals))));
+            Collections.reverse(intermediateGoals);
+            intermediateGoals.sort(Comparator.comparingInt(c -> manhattanDistance(initialPos, c)));
+            nextGoal = intermediateGoals.get(0);
+        }
+        return nextGoal;
+    }
+
     /**
      * Find the final goal nearest to a given position
      *
@@ -82,62 +149,120 @@ public class AStarSearch extends SearchStrategy {
     }
 
     /**
-     * Run an A* search between two points
+     * Choose whether this strategy searches from both ends at once. Long routes, such as those across the map to an
+     * exit, expand fewer nodes this way. Searches fall back to one direction while the map has keys on it that haven't
+     * been collected, as their negative cost can't be searched from both ends.
+     * Otherwise a bidirectional search always runs to the end, even with a time budget. Subclasses that replace
+     * search() ignore this.
+     *
+     * @param bidirectional True to search from both ends
+     */
+    public void setBidirectional(boolean bidirectional) {
+        mBidirectional = bidirectional;
+    }
+
+    public boolean isBidirectional() {
+        return mBidirectional;
+    }
+
+    /**
+     * Number of searches answered from the path cache, either exactly or with the rest of a cached path the start is on.
+     */
+    public long getPathCacheHits() {
+        return mPathCache.getHits();
+    }
+
+    /**
+     * Number of searches that had to be run because no cached path could be used.
+     */
+    public long getPathCacheMisses() {
+        return mPathCache.getMisses();
+    }
+
+    /**
+     * Find a path between two points, reusing a cached one if the map hasn't changed since it was found.
      *
      * @param map   Map we're navigating on
      * @param start Coordinate to start search from
      * @param goal  Coordinate to end search on
      * @return List of coordinates to get from start to goal
      */
-    private List<Coordinate> search(HashMap<Coordinate, MapTile> map, Coordinate start, Coordinate goal, Set<Integer> keysCollected) {
-        // Evaluated nodes
-        List<Coordinate> closedSet = new ArrayList<>();
-        // Discovered but unevaluated nodes
-        List<Coordinate> openSet = new ArrayList<>(Collections.singleton(start));
-
-        Map<Coordinate, Coordinate> cameFrom = new HashMap<>();
-
-        Map<Coordinate, Integer> gScore = new DefaultDict<>(Integer.MAX_VALUE);
-        gScore.put(start, 0);
+    private List<Coordinate> cachedSearch(HashMap<Coordinate, MapTile> map, Coordinate start, Coordinate goal,
+                                          Set<Integer> keysCollected) {
+        List<Coordinate> path = mPathCache.get(map, getMapVersion(), start, goal, keysCollected);
+        if (path == null) {
+            path = search(map, start, goal, keysCollected);
+            // A path cut short by the time budget may still be improved on, so only the cheapest are kept
+            if (!isCancelled() && (getTimeBudget() == 0 || searchesBothWays(map, keysCollected) ||
+                    mAnytimeSearch.isOptimal())) {
+                mPathCache.put(map, getMapVersion(), start, goal, keysCollected, path);
+            }
+        }
+        return path;
+    }
 
-        Map<Coordinate, Integer> fScore = new DefaultDict<>(Integer.MAX_VALUE);
-        fScore.put(start, heuristicCost(start, goal));
+    /**
+     * Run an A* search between two points. With a time budget, an anytime search is refined until the deadline instead
+     * and the best path so far is returned, unless this strategy is bidirectional and no keys are left on the map. The
+     * anytime search costs tiles with stepCost() rather than moveCost(), as it can't search negative costs, so its
+     * routes don't go out of their way through uncollected keys that aren't their goal.
+     *
+     * @param map   Map we're navigating on
+     * @param start Coordinate to start search from
+     * @param goal  Coordinate to end search on
+     * @return List of coordinates to get from start to goal
+     */
+    protected List<Coordinate> search(HashMap<Coordinate, MapTile> map, Coordinate start, Coordinate goal, Set<Integer> keysCollected) {
+        if (searchesBothWays(map, keysCollected)) {
+            return mBidirectionalSearch.search(beginSearch(map), map, start, goal, keysCollected);
+        }
+        if (getTimeBudget() > 0) {
+            return mAnytimeSearch.search(map, getMapVersion(), start, goal, keysCollected, getDeadline());
+        }
+        SearchWorkspace workspace = beginSearch(map);
+        // Evaluated nodes
+        BitSet closedSet = workspace.getClosedSet();
+        // Discovered but unevaluated nodes, ordered by fScore
+        IndexedMinHeap openSet = workspace.getOpenSet();
 
         List<Coordinate> path = new ArrayList<>();
-        while (!openSet.isEmpty()) {
-            Coordinate current = openSet.stream().min(Comparator.comparingInt(fScore::get)).get();
-            if (current.equals(goal)) {
-                path = reconstructPath(cameFrom, current);
+        int startNode = workspace.index(start);
+        if (startNode < 0) {
+            return path;
+        }
+        int goalNode = workspace.index(goal);
+        workspace.setGScore(startNode, 0);
+        workspace.setFScore(startNode, heuristicCost(start, goal));
+        openSet.add(startNode, workspace.getFScore(startNode));
+
+        while (!openSet.isEmpty() && !isCancelled()) {
+            int current = openSet.poll();
+            nodeExpanded();
+            if (current == goalNode) {
+                path = workspace.reconstructPath(current);
                 break;
             }
 
-            openSet.remove(current);
-            closedSet.add(current);
+            closedSet.set(current);
 
-            for (Coordinate neighbour : getNeighbours(current, map)) {
-                if (closedSet.contains(neighbour)) {
+            int neighbourCount = workspace.neighbours(current, map, mNeighbours);
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = mNeighbours[i];
+                if (closedSet.get(neighbour)) {
                     continue;
                 }
-                int tentativeGScore = gScore.get(current) + 1;
-
-                if (map.get(neighbour) instanceof LavaTrap &&
-                        ((LavaTrap) map.get(neighbour)).getKey() > 0 &&
-                        !keysCollected.contains(((LavaTrap) map.get(neighbour)).getKey())) {
-                    tentativeGScore -= 100;
-                } else if (map.get(neighbour).isType(MapTile.Type.UTILITY)) {
-                    tentativeGScore += 10;
-                } else if (map.get(neighbour) instanceof TrapTile) {
-                    tentativeGScore += 10;
-                }
+                Coordinate neighbourCoordinate = workspace.coordinate(neighbour);
+                MapTile tile = map.get(neighbourCoordinate);
+                int tentativeGScore = workspace.getGScore(current) + moveCost(tile, keysCollected);
 
-                if (!openSet.contains(neighbour)) {
-                    openSet.add(neighbour);
-                } else if (tentativeGScore >= gScore.get(neighbour)) {
+                boolean discovered = openSet.contains(neighbour);
+                if (discovered && tentativeGScore >= workspace.getGScore(neighbour)) {
                     continue;
                 }
-                cameFrom.put(neighbour, current);
-                gScore.put(neighbour, tentativeGScore);
-                fScore.put(neighbour, gScore.get(neighbour) + heuristicCost(neighbour, goal));
+                workspace.setCameFrom(neighbour, current);
+                workspace.setGScore(neighbour, tentativeGScore);
+                workspace.setFScore(neighbour, tentativeGScore + heuristicCost(neighbourCoordinate, goal));
+                openSet.addOrUpdate(neighbour, workspace.getFScore(neighbour));
             }
         }
         Collections.reverse(path);
@@ -145,24 +270,66 @@ public class AStarSearch extends SearchStrategy {
     }
 
     /**
-     * Get all the neighbours for the given node
+     * Check if search() meets in the middle, which it does when asked to unless the map has uncollected keys on it.
+     */
+    private boolean searchesBothWays(HashMap<Coordinate, MapTile> map, Set<Integer> keysCollected) {
+        if (!mBidirectional) {
+            return false;
+        }
+        if (map != mKeysOnMapMap || getMapVersion() != mKeysOnMapVersion) {
+            mKeysOnMap = new HashSet<>();
+            for (MapTile tile : map.values()) {
+                if (tile instanceof LavaTrap && ((LavaTrap) tile).getKey() > 0) {
+                    mKeysOnMap.add(((LavaTrap) tile).getKey());
+                }
+            }
+            mKeysOnMapMap = map;
+            mKeysOnMapVersion = getMapVersion();
+        }
+        return keysCollected.containsAll(mKeysOnMap);
+    }
+
+    /**
+     * Cost of driving onto a tile as used by search(). Uncollected keys have a negative cost so that routes through
+     * them are preferred, while unexplored tiles and traps are penalised.
      *
-     * @param current Node to get neighbours from
-     * @param map     Map on which we can find the neighbours
-     * @return Node's neighbours
+     * @param tile          Tile being driven onto
+     * @param keysCollected Keys the car already has
+     * @return Cost of entering the tile
      */
-    private List<Coordinate> getNeighbours(Coordinate current, HashMap<Coordinate, MapTile> map) {
-        List<Coordinate> possibleNeighbours = new ArrayList<>(Arrays.asList(
-                new Coordinate(current.x + 1, current.y),
-                new Coordinate(current.x - 1, current.y),
-                new Coordinate(current.x, current.y + 1),
-                new Coordinate(current.x, current.y - 1)
-        ));
+    protected int moveCost(MapTile tile, Set<Integer> keysCollected) {
+        int cost = 1;
+        if (tile instanceof LavaTrap &&
+                ((LavaTrap) tile).getKey() > 0 &&
+                !keysCollected.contains(((LavaTrap) tile).getKey())) {
+            cost -= 100;
+        } else if (tile.isType(MapTile.Type.UTILITY)) {
+            cost += 10;
+        } else if (tile instanceof TrapTile) {
+            cost += 10;
+        }
+        return cost;
+    }
 
-        return possibleNeighbours.stream().filter(coordinate -> {
-            MapTile tile = map.get(coordinate);
-            return tile != null && !(tile.isType(MapTile.Type.WALL) || tile instanceof MudTrap || tile.isType(MapTile.Type.EMPTY));
-        }).collect(Collectors.toList());
+    /**
+     * Cost of driving onto a tile. This follows the same rules as search(), except that uncollected keys cost the same
+     * as road rather than being negative, so it can be used by searches that need non-negative edge costs.
+     *
+     * @param tile          Tile being driven onto
+     * @param keysCollected Keys the car already has
+     * @return Cost of entering the tile, at least 1
+     */
+    protected int stepCost(MapTile tile, Set<Integer> keysCollected) {
+        if (tile instanceof LavaTrap &&
+                ((LavaTrap) tile).getKey() > 0 &&
+                !keysCollected.contains(((LavaTrap) tile).getKey())) {
+            return 1;
+        } else if (tile.isType(MapTile.Type.UTILITY)) {
+            return 11;
+        } else if (tile instanceof TrapTile) {
+            return 11;
+        }
+        return 1;
     }
 
     /**
@@ -173,28 +340,12 @@ public class AStarSearch extends SearchStrategy {
      * @param coord2 Coordinate we're ending at.
      * @return Heuristic cost of doing from coord1 to coord2
      */
-    private int heuristicCost(Coordinate coord1, Coordinate coord2) {
+    protected int heuristicCost(Coordinate coord1, Coordinate coord2) {
         return manhattanDistance(coord1, coord2);
     }
 
-    private int manhattanDistance(Coordinate coordinate1, Coordinate coordinate2) {
+    protected int manhattanDistance(Coordinate coordinate1, Coordinate coordinate2) {
         return Math.abs(coordinate1.x - coordinate2.x) + Math.abs(coordinate1.y - coordinate2.y);
     }
 
-    /**
-     * Reconstruct the path using the map of nodes built during the search.
-     *
-     * @param cameFrom Map of shortest paths from one node to another
-     * @param current  Node to start constructing path from
-     * @return Reconstructed path
-     */
-    private List<Coordinate> reconstructPath(Map<Coordinate, Coordinate> cameFrom, Coordinate current) {
-        List<Coordinate> path = new ArrayList<>(Collections.singleton(current));
-        while (cameFrom.containsKey(current)) {
-            current = cameFrom.get(current);
-            path.add(current);
-        }
-        return path;
-    }
-
 }
@@ -0,0 +1,223 @@
+package mycontroller;
+
+import tiles.MapTile;
+import utilities.Coordinate;
+
+import java.util.*;
+
+/**
+ * Anytime repairing A* (ARA*), run by AStarSearch when it has a time budget.
+ *
+ * The search starts with a heavily weighted heuristic, which finds a path quickly but with no promise that it is the
+ * cheapest, then lowers the weight step by step, each time reusing the scores already found rather than starting over.
+ * Nodes whose score improves after they have been expanded in the current step are set aside and only reopened when
+ * the next step starts. When the deadline passes, the best path found so far is returned and the search picks up where
+ * it left off on the next call.
+ *
+ * The search runs backwards from the goal, so its scores are costs to the goal and stay valid as the car moves along.
+ * A call from a new start only needs the open nodes reordered for the new heuristic, which is the same work as starting
+ * a new step. Anything else changing, i.e. the map, goal or keys, starts the search again.
+ *
+ * Costs are AStarSearch.stepCost(), as the weighted heuristic needs them to be non-negative.
+ */
+class AnytimeAStar {
+    /**
+     * Heuristic weights, in tenths
+     */
+    private static final int INITIAL_WEIGHT = 30;
+    private static final int WEIGHT_STEP = 5;
+    private static final int OPTIMAL_WEIGHT = 10;
+    /**
+     * Number of expansions between looking at the clock
+     */
+    private static final int CLOCK_INTERVAL = 16;
+
+    private final AStarSearch mSearch;
+    private final SearchWorkspace mWorkspace = new SearchWorkspace();
+    private final int[] mNeighbours = new int[4];
+    /**
+     * Nodes whose score improved after they were expanded in the current step
+     */
+    private final BitSet mInconsistent = new BitSet();
+    private int[] mReorderBuffer = new int[0];
+
+    // What the current search is for
+    private HashMap<Coordinate, MapTile> mMap;
+    private int mMapVersion;
+    private Coordinate mGoal;
+    private Set<Integer> mKeysCollected;
+    private int mStartNode = -1;
+
+    private int mWeight;
+    /**
+     * Whether the step at the current weight has finished for the current start
+     */
+    private boolean mStepDone;
+
+    /**
+     * @param search Search whose costs and heuristic are used
+     */
+    AnytimeAStar(AStarSearch search) {
+        mSearch = search;
+    }
+
+    /**
+     * Refine the path between two points until the deadline.
+     *
+     * The first step always runs until it finds a path or runs out of nodes, even past the deadline, so that there is
+     * something to follow.
+     *
+     * @param map        Map we're navigating on
+     * @param mapVersion Version of the map, as given by SearchStrategy.getMapVersion()
+     * @param start      Coordinate to start search from
+     * @param goal       Coordinate to end search on
+     * @param deadline   System.nanoTime() at which to stop refining
+     * @return Best path found from start to goal so far, empty if there is none
+     */
+    List<Coordinate> search(HashMap<Coordinate, MapTile> map, int mapVersion, Coordinate start, Coordinate goal,
+                            Set<Integer> keysCollected, long deadline) {
+        if (map != mMap || mapVersion != mMapVersion || !goal.equals(mGoal) ||
+                !keysCollected.equals(mKeysCollected)) {
+            restart(map, mapVersion, goal, keysCollected);
+        }
+        List<Coordinate> path = new ArrayList<>();
+        int startNode = mWorkspace.index(start);
+        if (startNode < 0 || mWorkspace.index(goal) < 0) {
+            return path;
+        }
+        if (startNode != mStartNode) {
+            mStartNode = startNode;
+            reorder();
+        }
+
+        // Every call makes some progress, even if the deadline has already passed
+        while (true) {
+            if (mStepDone) {
+                if (mWeight == OPTIMAL_WEIGHT) {
+                    break;
+                }
+                mWeight = Math.max(OPTIMAL_WEIGHT, mWeight - WEIGHT_STEP);
+                reorder();
+            }
+            boolean mustFinish = mWorkspace.getGScore(mStartNode) == SearchWorkspace.UNREACHED;
+            mStepDone = improvePath(deadline, mustFinish);
+            if (!mStepDone || System.nanoTime() - deadline >= 0) {
+                break;
+            }
+        }
+
+        if (mWorkspace.getGScore(mStartNode) == SearchWorkspace.UNREACHED) {
+            return path;
+        }
+        // Parents point towards the goal, and each has a lower cost to it, so this always ends on the goal
+        for (int node = mStartNode; node != SearchWorkspace.NO_PARENT; node = mWorkspace.getCameFrom(node)) {
+            path.add(mWorkspace.coordinate(node));
+        }
+        return path;
+    }
+
+    /**
+     * Check if the last path returned is the cheapest there is, i.e. refinement has finished for it.
+     */
+    boolean isOptimal() {
+        return mWeight == OPTIMAL_WEIGHT && mStepDone;
+    }
+
+    /**
+     * Start a new search from the goal.
+     */
+    private void restart(HashMap<Coordinate, MapTile> map, int mapVersion, Coordinate goal,
+                         Set<Integer> keysCollected) {
+        mWorkspace.begin(map);
+        mInconsistent.clear();
+        mMap = map;
+        mMapVersion = mapVersion;
+        mGoal = goal;
+        mKeysCollected = new HashSet<>(keysCollected);
+        mStartNode = -1;
+        mWeight = INITIAL_WEIGHT;
+        mStepDone = false;
+        int goalNode = mWorkspace.index(goal);
+        if (goalNode >= 0) {
+            mWorkspace.setGScore(goalNode, 0);
+            mWorkspace.getOpenSet().add(goalNode, 0);
+        }
+    }
+
+    /**
+     * Begin a new step: reopen the nodes set aside, forget which nodes have been expanded, and reorder the open set for
+     * the current weight and start.
+     */
+    private void reorder() {
+        IndexedMinHeap openSet = mWorkspace.getOpenSet();
+        int count = 0;
+        if (mReorderBuffer.length < openSet.size()) {
+            mReorderBuffer = new int[openSet.size()];
+        }
+        while (!openSet.isEmpty()) {
+            mReorderBuffer[count++] = openSet.poll();
+        }
+        for (int i = 0; i < count; i++) {
+            openSet.add(mReorderBuffer[i], priority(mReorderBuffer[i]));
+        }
+        for (int node = mInconsistent.nextSetBit(0); node >= 0; node = mInconsistent.nextSetBit(node + 1)) {
+            openSet.addOrUpdate(node, priority(node));
+        }
+        mInconsistent.clear();
+        mWorkspace.getClosedSet().clear();
+        mStepDone = false;
+    }
+
+    /**
+     * Expand nodes until no open node could improve the path from the start at the current weight.
+     *
+     * @param deadline   System.nanoTime() at which to stop
+     * @param mustFinish True to ignore the deadline
+     * @return True if the step finished, false if it ran out of time
+     */
+    private boolean improvePath(long deadline, boolean mustFinish) {
+        IndexedMinHeap openSet = mWorkspace.getOpenSet();
+        BitSet closedSet = mWorkspace.getClosedSet();
+        int expanded = 0;
+        while (!openSet.isEmpty() && openSet.priority(openSet.peek()) < priority(mStartNode)) {
+            if (mSearch.isCancelled() ||
+                    !mustFinish && ++expanded % CLOCK_INTERVAL == 0 && System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            int current = openSet.poll();
+            mSearch.nodeExpanded();
+            closedSet.set(current);
+
+            // Searching backwards, each step from a neighbour costs the tile being expanded
+            int cost = mWorkspace.getGScore(current) + mSearch.stepCost(mMap.get(mWorkspace.coordinate(current)),
+                    mKeysCollected);
+            int neighbourCount = mWorkspace.neighbours(current, mMap, mNeighbours);
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = mNeighbours[i];
+                if (cost >= mWorkspace.getGScore(neighbour)) {
+                    continue;
+                }
+                mWorkspace.setGScore(neighbour, cost);
+                mWorkspace.setCameFrom(neighbour, current);
+                if (closedSet.get(neighbour)) {
+                    mInconsistent.set(neighbour);
+                } else {
+                    openSet.addOrUpdate(neighbour, priority(neighbour));
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cost to the goal plus the weighted heuristic to the start, in tenths.
+     */
+    private long priority(int node) {
+        long gScore = mWorkspace.getGScore(node);
+        if (gScore == SearchWorkspace.UNREACHED) {
+            return Long.MAX_VALUE;
+        }
+        return gScore * OPTIMAL_WEIGHT +
+                (long) mWeight * mSearch.heuristicCost(mWorkspace.coordinate(node), mWorkspace.coordinate(mStartNode));
+    }
+}
@@ -0,0 +1,124 @@
+package mycontroller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Makes plans on a thread of its own, so that searching doesn't hold up the updates the car is driven from.
+ *
+ * Only one plan is made at a time. Finished plans are published through an atomic reference and taken by the update
+ * thread when it is ready for them. By then the car has usually moved on, following the previous plan. A plan is only
+ * used if the car is in the state the rest of it expects: either the car has done just what the plan would have had it
+ * do in the meantime, or it is still in the state the plan was made from, e.g. after braking while stopped. Otherwise
+ * the plan is thrown away.
+ */
+class BackgroundPlanner {
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "planner");
+        // Don't keep the simulation running once it has finished
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Newest finished plan that hasn't been taken yet
+     */
+    private final AtomicReference<Plan> mFinished = new AtomicReference<>();
+    private final AtomicBoolean mPlanning = new AtomicBoolean();
+    /**
+     * Directions the car has followed since the plan being made, or waiting to be taken, was requested
+     */
+    private final List<RelativeDirection> mFollowed = new ArrayList<>();
+    /**
+     * State the plan being made, or waiting to be taken, starts from
+     */
+    private CarState mRequestedFrom;
+    private long mAccepted;
+    private long mRejected;
+
+    /**
+     * @return True if no plan is being made or waiting to be taken, so a new one can be requested
+     */
+    boolean isIdle() {
+        // A finished plan is published before planning is marked as done
+        return !mPlanning.get() && mFinished.get() == null;
+    }
+
+    /**
+     * @return True if a plan is being made now
+     */
+    boolean isPlanning() {
+        return mPlanning.get();
+    }
+
+    /**
+     * Start making a plan, unless one is already being made.
+     *
+     * @param from    State of the car the plan starts from
+     * @param planner Makes the plan. It runs on the planning thread, so anything it uses must only be used from there.
+     * @return True if planning started
+     */
+    boolean request(CarState from, Supplier<Plan> planner) {
+        if (!isIdle()) {
+            return false;
+        }
+        mPlanning.set(true);
+        mFollowed.clear();
+        mRequestedFrom = from;
+        mExecutor.execute(() -> {
+            try {
+                mFinished.set(planner.get());
+            } finally {
+                mPlanning.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Record what the car did on an update.
+     *
+     * @param direction Direction the car followed, or NONE if it did anything else
+     */
+    void followed(RelativeDirection direction) {
+        mFollowed.add(direction);
+    }
+
+    /**
+     * Take the finished plan, if there is one.
+     *
+     * @param now Car's state now
+     * @return The rest of the plan from the car's state, or null if there is no new plan or the car has strayed from it
+     */
+    Plan take(CarState now) {
+        Plan plan = mFinished.getAndSet(null);
+        if (plan == null) {
+            return null;
+        }
+        plan = plan.after(mRequestedFrom, mFollowed, now);
+        if (plan == null) {
+            mRejected++;
+        } else {
+            mAccepted++;
+        }
+        return plan;
+    }
+
+    /**
+     * Number of finished plans that were followed.
+     */
+    long getAccepted() {
+        return mAccepted;
+    }
+
+    /**
+     * Number of finished plans thrown away because the car had left their path.
+     */
+    long getRejected() {
+        return mRejected;
+    }
+}
@@ -0,0 +1,14 @@
+package mycontroller;
+
+import world.Car;
+
+/**
+ * MyAIController with its planning done on a thread of its own, for maps where searching is slow enough to hold up
+ * the simulation. Choose it with Controller=mycontroller.BackgroundPlanningAIController in Driving.Properties.
+ */
+public class BackgroundPlanningAIController extends MyAIController {
+    public BackgroundPlanningAIController(Car car) {
+        super(car);
+        startBackgroundPlanning();
+    }
+}
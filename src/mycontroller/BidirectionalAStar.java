@@ -0,0 +1,139 @@
+package mycontroller;
+
+import tiles.MapTile;
+import utilities.Coordinate;
+
+import java.util.*;
+
+/**
+ * Bidirectional A*, run by AStarSearch when it is in bidirectional mode.
+ *
+ * One search runs forwards from the start and another backwards from the goal, always advancing whichever has the
+ * smaller open set. Every time one side reaches a node the other has already reached, the two halves form a candidate
+ * path. Every path cheaper than the best candidate must still pass through a node open on both sides, so the search
+ * stops once the smallest fScore on either side is no less than the best candidate.
+ *
+ * Both sides use AStarSearch's costs and heuristic. This needs the costs to be non-negative, so it is only used when
+ * there are no keys to collect.
+ */
+class BidirectionalAStar {
+    private final AStarSearch mSearch;
+    /**
+     * Workspace for the backward half, the forward half uses the strategy's own
+     */
+    private final SearchWorkspace mBackward = new SearchWorkspace();
+    private final int[] mNeighbours = new int[4];
+
+    private HashMap<Coordinate, MapTile> mMap;
+    private Set<Integer> mKeysCollected;
+    private int mBestCost;
+    private int mMeetingNode;
+
+    /**
+     * @param search Search whose costs and heuristic are used
+     */
+    BidirectionalAStar(AStarSearch search) {
+        mSearch = search;
+    }
+
+    /**
+     * Run a bidirectional A* search between two points.
+     *
+     * @param forward Workspace for the forward half, ready for a new search over the map
+     * @param map     Map we're navigating on
+     * @param start   Coordinate to start search from
+     * @param goal    Coordinate to end search on
+     * @return List of coordinates to get from start to goal
+     */
+    List<Coordinate> search(SearchWorkspace forward, HashMap<Coordinate, MapTile> map, Coordinate start,
+                            Coordinate goal, Set<Integer> keysCollected) {
+        mBackward.begin(map);
+        mMap = map;
+        mKeysCollected = keysCollected;
+        List<Coordinate> path = new ArrayList<>();
+        int startNode = forward.index(start);
+        int goalNode = forward.index(goal);
+        if (startNode < 0 || goalNode < 0) {
+            return path;
+        }
+        mBestCost = SearchWorkspace.UNREACHED;
+        mMeetingNode = -1;
+
+        forward.setGScore(startNode, 0);
+        forward.getOpenSet().add(startNode, mSearch.heuristicCost(start, goal));
+        mBackward.setGScore(goalNode, 0);
+        mBackward.getOpenSet().add(goalNode, mSearch.heuristicCost(goal, start));
+        if (startNode == goalNode) {
+            mBestCost = 0;
+            mMeetingNode = startNode;
+        }
+
+        IndexedMinHeap forwardOpen = forward.getOpenSet();
+        IndexedMinHeap backwardOpen = mBackward.getOpenSet();
+        while (!forwardOpen.isEmpty() && !backwardOpen.isEmpty() && !mSearch.isCancelled() &&
+                forwardOpen.priority(forwardOpen.peek()) < mBestCost &&
+                backwardOpen.priority(backwardOpen.peek()) < mBestCost) {
+            if (forwardOpen.size() <= backwardOpen.size()) {
+                expand(forward, mBackward, false, goal);
+            } else {
+                expand(mBackward, forward, true, start);
+            }
+        }
+        if (mMeetingNode < 0) {
+            return path;
+        }
+
+        // Start to meeting node, then on to the goal
+        path = forward.reconstructPath(mMeetingNode);
+        Collections.reverse(path);
+        int current = mMeetingNode;
+        while (mBackward.getCameFrom(current) != SearchWorkspace.NO_PARENT) {
+            current = mBackward.getCameFrom(current);
+            path.add(mBackward.coordinate(current));
+        }
+        return path;
+    }
+
+    /**
+     * Expand the best open node of one side.
+     *
+     * @param side     Workspace of the side being expanded
+     * @param other    Workspace of the other side
+     * @param backward True if the side being expanded runs from the goal
+     * @param target   Coordinate the side is heading for
+     */
+    private void expand(SearchWorkspace side, SearchWorkspace other, boolean backward, Coordinate target) {
+        int current = side.getOpenSet().poll();
+        mSearch.nodeExpanded();
+        side.getClosedSet().set(current);
+
+        // Going forwards each step costs the tile entered, going backwards the tile left
+        int leaveCost = backward ? cost(side, current) : 0;
+        int neighbourCount = side.neighbours(current, mMap, mNeighbours);
+        for (int i = 0; i < neighbourCount; i++) {
+            int neighbour = mNeighbours[i];
+            if (side.getClosedSet().get(neighbour)) {
+                continue;
+            }
+            int tentativeGScore = side.getGScore(current) + (backward ? leaveCost : cost(side, neighbour));
+            IndexedMinHeap openSet = side.getOpenSet();
+            if (openSet.contains(neighbour) && tentativeGScore >= side.getGScore(neighbour)) {
+                continue;
+            }
+            side.setCameFrom(neighbour, current);
+            side.setGScore(neighbour, tentativeGScore);
+            openSet.addOrUpdate(neighbour,
+                    tentativeGScore + mSearch.heuristicCost(side.coordinate(neighbour), target));
+
+            int otherGScore = other.getGScore(neighbour);
+            if (otherGScore != SearchWorkspace.UNREACHED && tentativeGScore + otherGScore < mBestCost) {
+                mBestCost = tentativeGScore + otherGScore;
+                mMeetingNode = neighbour;
+            }
+        }
+    }
+
+    private int cost(SearchWorkspace workspace, int node) {
+        return mSearch.moveCost(mMap.get(workspace.coordinate(node)), mKeysCollected);
+    }
+}
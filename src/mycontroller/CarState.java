@@ -0,0 +1,33 @@
+package mycontroller;
+
+import utilities.Coordinate;
+import world.WorldSpatial;
+
+/**
+ * Where the car is, which way it faces and how fast it is going.
+ */
+class CarState {
+    final Coordinate position;
+    final WorldSpatial.Direction orientation;
+    final int velocity;
+
+    CarState(Coordinate position, WorldSpatial.Direction orientation, int velocity) {
+        this.position = position;
+        this.orientation = orientation;
+        this.velocity = velocity;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof CarState)) {
+            return false;
+        }
+        CarState state = (CarState) other;
+        return position.equals(state.position) && orientation == state.orientation && velocity == state.velocity;
+    }
+
+    @Override
+    public int hashCode() {
+        return (position.hashCode() * 31 + orientation.hashCode()) * 31 + velocity;
+    }
+}
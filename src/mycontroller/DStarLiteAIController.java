@@ -0,0 +1,14 @@
+package mycontroller;
+
+import world.Car;
+
+/**
+ * MyAIController with DStarLiteSearch for reaching keys, health and exits, so each plan repairs the search tree of the
+ * last rather than searching from scratch. Choose it with Controller=mycontroller.DStarLiteAIController in
+ * Driving.Properties.
+ */
+public class DStarLiteAIController extends MyAIController {
+    public DStarLiteAIController(Car car) {
+        super(car, new DStarLiteSearch());
+    }
+}
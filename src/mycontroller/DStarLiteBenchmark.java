@@ -0,0 +1,137 @@
+package mycontroller;
+
+import tiles.MapTile;
+import utilities.Coordinate;
+import world.Car;
+import world.TmxMapReader;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Compares replanning with DStarLiteSearch against searching from scratch with AStarSearch while the map is revealed.
+ *
+ * For each random start and goal pair, a car starts on the map as the controller first sees it, where all road is
+ * still unexplored, and drives to the goal a tile at a time along DStarLiteSearch's path. Before each step it reveals
+ * the tiles within Car.VIEW_SQUARE of itself, reports those that changed through mapChanged(), and plans again with
+ * both strategies. Every key counts as collected, so both cost tiles the same way and must find paths of the same
+ * cost; the run exits with status 1 if they ever don't. Run from the project root with the libraries on the
+ * classpath:
+ *
+ *     java mycontroller.DStarLiteBenchmark [map.tmx ...]
+ *
+ * With no arguments the bundled maps in assets/ are used.
+ */
+public class DStarLiteBenchmark {
+    private static final int DRIVES = 20;
+    private static final long SEED = 30006;
+
+    private long mPlans;
+    private long mMismatches;
+
+    public static void main(String[] args) throws IOException {
+        String[] maps = args.length > 0 ? args : SearchBenchmark.BUNDLED_MAPS;
+        System.out.printf("%-28s %-20s %8s %8s %10s %12s %10s%n",
+                "map", "strategy", "drives", "plans", "expanded", "expanded/p", "ms");
+        DStarLiteBenchmark benchmark = new DStarLiteBenchmark();
+        for (String mapPath : maps) {
+            TmxMapReader reader = TmxMapReader.read(mapPath);
+            Set<Integer> allKeys = new HashSet<>();
+            for (int key = 1; key <= reader.getNumKeys(); key++) {
+                allKeys.add(key);
+            }
+            List<Coordinate[]> queries = SearchBenchmark.queries(reader.getTiles(), DRIVES, SEED);
+            String name = mapPath.substring(mapPath.lastIndexOf('/') + 1);
+            // Warm up so the timings are of compiled code
+            benchmark.drive(reader.getTiles(), queries, allKeys, new DStarLiteSearch(), new AStarSearch());
+            benchmark.mPlans = 0;
+
+            DStarLiteSearch incremental = new DStarLiteSearch();
+            AStarSearch fresh = new AStarSearch();
+            long[] nanos = benchmark.drive(reader.getTiles(), queries, allKeys, incremental, fresh);
+            print(name, incremental, benchmark.mPlans, nanos[0]);
+            print(name, fresh, benchmark.mPlans, nanos[1]);
+        }
+        System.out.println(benchmark.mMismatches + " plans where the two paths differed in cost");
+        System.exit(benchmark.mMismatches == 0 ? 0 : 1);
+    }
+
+    private static void print(String mapName, SearchStrategy strategy, long plans, long nanos) {
+        long expanded = strategy.getNodesExpanded();
+        System.out.printf("%-28s %-20s %8d %8d %10d %12.1f %10.2f%n", mapName,
+                strategy.getClass().getSimpleName(), DRIVES, plans, expanded, expanded / (double) plans, nanos / 1e6);
+    }
+
+    /**
+     * Drive every query, planning with both strategies at each step.
+     *
+     * @return Time spent planning by the incremental strategy and by the fresh one, in nanoseconds
+     */
+    private long[] drive(HashMap<Coordinate, MapTile> revealed, List<Coordinate[]> queries, Set<Integer> keys,
+                         DStarLiteSearch incremental, AStarSearch fresh) {
+        long[] nanos = new long[2];
+        for (Coordinate[] query : queries) {
+            HashMap<Coordinate, MapTile> known = new HashMap<>(revealed);
+            known.replaceAll((coordinate, tile) -> tile.isType(MapTile.Type.ROAD) || tile.isType(MapTile.Type.TRAP)
+                    ? new MapTile(MapTile.Type.UTILITY) : tile);
+            Coordinate position = query[0];
+            for (int step = 0; step < known.size(); step++) {
+                List<Coordinate> changed = reveal(known, revealed, position);
+                incremental.mapChanged(changed);
+                fresh.mapChanged(changed);
+
+                long startTime = System.nanoTime();
+                List<Coordinate> path = incremental.search(known, position, query[1], keys);
+                long midTime = System.nanoTime();
+                List<Coordinate> freshPath = fresh.search(known, position, query[1], keys);
+                nanos[0] += midTime - startTime;
+                nanos[1] += System.nanoTime() - midTime;
+                mPlans++;
+                if (cost(fresh, known, path, keys) != cost(fresh, known, freshPath, keys)) {
+                    mMismatches++;
+                }
+                if (path.size() < 2) {
+                    break;
+                }
+                position = path.get(1);
+            }
+        }
+        return nanos;
+    }
+
+    /**
+     * Reveal the tiles the car can see from a position.
+     *
+     * @return Coordinates of the tiles that were not known before
+     */
+    private static List<Coordinate> reveal(HashMap<Coordinate, MapTile> known, HashMap<Coordinate, MapTile> revealed,
+                                           Coordinate position) {
+        List<Coordinate> changed = new ArrayList<>();
+        for (int x = position.x - Car.VIEW_SQUARE; x <= position.x + Car.VIEW_SQUARE; x++) {
+            for (int y = position.y - Car.VIEW_SQUARE; y <= position.y + Car.VIEW_SQUARE; y++) {
+                Coordinate coordinate = new Coordinate(x, y);
+                MapTile tile = revealed.get(coordinate);
+                if (tile != null && known.get(coordinate) != tile) {
+                    known.put(coordinate, tile);
+                    changed.add(coordinate);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Cost of a path, or -1 if there is none.
+     */
+    private static int cost(AStarSearch costs, HashMap<Coordinate, MapTile> map, List<Coordinate> path,
+                            Set<Integer> keys) {
+        if (path.isEmpty()) {
+            return -1;
+        }
+        int cost = 0;
+        for (int i = 1; i < path.size(); i++) {
+            cost += costs.stepCost(map.get(path.get(i)), keys);
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,254 @@
+package mycontroller;
+
+import tiles.MapTile;
+import utilities.Coordinate;
+
+import java.util.*;
+
+/**
+ * D* Lite search for reaching keys, health and exits.
+ *
+ * Goals are chosen the same way as AStarSearch, but rather than searching from scratch every time, the search tree is
+ * kept between calls. The search runs backwards from the goal so that the car moving only changes the heuristic, and
+ * only the nodes next to tiles reported through mapChanged() are repaired. Per call planning cost therefore follows the
+ * size of the change to the map rather than the size of the map.
+ *
+ * Edge costs come from AStarSearch.stepCost(), as D* Lite needs them to be non-negative.
+ */
+public class DStarLiteSearch extends AStarSearch {
+    /**
+     * Cost of a node that cannot reach the goal
+     */
+    private static final int INFINITY = Integer.MAX_VALUE / 4;
+
+    /**
+     * Grid indexing for the map the search tree was built on
+     */
+    private final SearchWorkspace mGrid = new SearchWorkspace();
+    /**
+     * Inconsistent nodes, keyed on [min(g, rhs) + h + km, min(g, rhs)]
+     */
+    private final IndexedMinHeap mOpenSet = new IndexedMinHeap();
+    /**
+     * Cost to the goal as of the node's last expansion
+     */
+    private int[] mGScore = new int[0];
+    /**
+     * One step lookahead cost to the goal
+     */
+    private int[] mRhs = new int[0];
+    private final int[] mNeighbours = new int[4];
+    private final int[] mAdjacent = new int[4];
+    /**
+     * Tiles that have changed since the last search
+     */
+    private final List<Coordinate> mChangedTiles = new ArrayList<>();
+
+    private HashMap<Coordinate, MapTile> mMap;
+    private int mMapSize = -1;
+    private Set<Integer> mKeysCollected = new HashSet<>();
+    private Coordinate mGoal;
+    private Coordinate mLastStart;
+    private int mStartNode;
+    private int mGoalNode;
+    /**
+     * Key modifier, accumulates how far the start has moved since the tree was built
+     */
+    private int mKm;
+
+    @Override
+    public void mapChanged(List<Coordinate> changedTiles) {
+        super.mapChanged(changedTiles);
+        mChangedTiles.addAll(changedTiles);
+    }
+
+    /**
+     * Find a path between two points, reusing the search tree from the previous call where possible.
+     *
+     * @param map   Map we're navigating on
+     * @param start Coordinate to start search from
+     * @param goal  Coordinate to end search on
+     * @return List of coordinates to get from start to goal
+     */
+    @Override
+    protected List<Coordinate> search(HashMap<Coordinate, MapTile> map, Coordinate start, Coordinate goal,
+                                      Set<Integer> keysCollected) {
+        if (map != mMap || map.size() != mMapSize || !goal.equals(mGoal) || !keysCollected.equals(mKeysCollected)) {
+            initialise(map, start, goal, keysCollected);
+        } else {
+            // The car has moved, so every key in the queue is now an overestimate by at most this much
+            mKm += heuristicCost(mLastStart, start);
+            mLastStart = start;
+            repairChangedTiles();
+        }
+        mStartNode = mGrid.index(start);
+        if (mStartNode < 0 || mGoalNode < 0) {
+            return new ArrayList<>();
+        }
+
+        computeShortestPath();
+        return extractPath();
+    }
+
+    /**
+     * Throw away the search tree and start a new one towards the given goal.
+     */
+    private void initialise(HashMap<Coordinate, MapTile> map, Coordinate start, Coordinate goal,
+                            Set<Integer> keysCollected) {
+        mGrid.begin(map);
+        int size = mGrid.size();
+        if (mGScore.length != size) {
+            mGScore = new int[size];
+            mRhs = new int[size];
+            mOpenSet.ensureCapacity(size);
+        }
+        Arrays.fill(mGScore, INFINITY);
+        Arrays.fill(mRhs, INFINITY);
+        mOpenSet.clear();
+        mChangedTiles.clear();
+
+        mMap = map;
+        mMapSize = map.size();
+        mKeysCollected = new HashSet<>(keysCollected);
+        mGoal = goal;
+        mLastStart = start;
+        mKm = 0;
+
+        mGoalNode = mGrid.index(goal);
+        if (mGoalNode >= 0) {
+            mRhs[mGoalNode] = 0;
+            mOpenSet.add(mGoalNode, key(mGoalNode));
+        }
+    }
+
+    /**
+     * Update every node whose cost to the goal could depend on a changed tile. Changing a tile changes the cost of
+     * entering it, so the tile itself and all of its neighbours need their lookahead recomputed.
+     */
+    private void repairChangedTiles() {
+        for (Coordinate coordinate : mChangedTiles) {
+            int node = mGrid.index(coordinate);
+            if (node < 0) {
+                continue;
+            }
+            updateNode(node);
+            int count = adjacent(node, mAdjacent);
+            for (int i = 0; i < count; i++) {
+                updateNode(mAdjacent[i]);
+            }
+        }
+        mChangedTiles.clear();
+    }
+
+    private void computeShortestPath() {
+        while (!mOpenSet.isEmpty() &&
+                (mOpenSet.priority(mOpenSet.peek()) < key(mStartNode) || mRhs[mStartNode] != mGScore[mStartNode])) {
+            int current = mOpenSet.peek();
+            nodeExpanded();
+            long oldKey = mOpenSet.priority(current);
+            long newKey = key(current);
+            if (oldKey < newKey) {
+                mOpenSet.update(current, newKey);
+            } else if (mGScore[current] > mRhs[current]) {
+                mGScore[current] = mRhs[current];
+                mOpenSet.remove(current);
+                int count = adjacent(current, mAdjacent);
+                for (int i = 0; i < count; i++) {
+                    updateNode(mAdjacent[i]);
+                }
+            } else {
+                mGScore[current] = INFINITY;
+                updateNode(current);
+                int count = adjacent(current, mAdjacent);
+                for (int i = 0; i < count; i++) {
+                    updateNode(mAdjacent[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recompute a node's lookahead cost and queue it if it has become inconsistent.
+     */
+    private void updateNode(int node) {
+        if (node != mGoalNode) {
+            int best = INFINITY;
+            if (SearchWorkspace.isPassable(mMap.get(mGrid.coordinate(node)))) {
+                int count = mGrid.neighbours(node, mMap, mNeighbours);
+                for (int i = 0; i < count; i++) {
+                    int neighbour = mNeighbours[i];
+                    if (mGScore[neighbour] < INFINITY) {
+                        best = Math.min(best, mGScore[neighbour] + cost(neighbour));
+                    }
+                }
+            }
+            mRhs[node] = best;
+        }
+        if (mOpenSet.contains(node)) {
+            mOpenSet.remove(node);
+        }
+        if (mGScore[node] != mRhs[node]) {
+            mOpenSet.add(node, key(node));
+        }
+    }
+
+    /**
+     * Follow the cheapest successors from the start to the goal.
+     */
+    private List<Coordinate> extractPath() {
+        List<Coordinate> path = new ArrayList<>();
+        if (mGScore[mStartNode] >= INFINITY) {
+            return path;
+        }
+        int current = mStartNode;
+        path.add(mGrid.coordinate(current));
+        while (current != mGoalNode && path.size() <= mGrid.size()) {
+            int next = -1;
+            int best = INFINITY;
+            int count = mGrid.neighbours(current, mMap, mNeighbours);
+            for (int i = 0; i < count; i++) {
+                int neighbour = mNeighbours[i];
+                if (mGScore[neighbour] < INFINITY && mGScore[neighbour] + cost(neighbour) < best) {
+                    best = mGScore[neighbour] + cost(neighbour);
+                    next = neighbour;
+                }
+            }
+            if (next < 0) {
+                return new ArrayList<>();
+            }
+            current = next;
+            path.add(mGrid.coordinate(current));
+        }
+        return path;
+    }
+
+    /**
+     * Collect all on-grid neighbours of a node, passable or not, as their cost to the goal may depend on the node.
+     *
+     * @return Number of neighbours written to the buffer
+     */
+    private int adjacent(int node, int[] adjacent) {
+        int width = mGrid.getWidth();
+        int x = node % width;
+        int y = node / width;
+        int count = 0;
+        if (x + 1 < width) adjacent[count++] = node + 1;
+        if (x > 0) adjacent[count++] = node - 1;
+        if (y + 1 < mGrid.getHeight()) adjacent[count++] = node + width;
+        if (y > 0) adjacent[count++] = node - width;
+        return count;
+    }
+
+    private int cost(int node) {
+        return stepCost(mMap.get(mGrid.coordinate(node)), mKeysCollected);
+    }
+
+    /**
+     * Priority of a node, packing the two part D* Lite key into a single value that compares the same way.
+     */
+    private long key(int node) {
+        int cost = Math.min(mGScore[node], mRhs[node]);
+        int first = cost >= INFINITY ? INFINITY : cost + heuristicCost(mGrid.coordinate(node), mLastStart) + mKm;
+        return ((long) first << 32) + cost;
+    }
+}
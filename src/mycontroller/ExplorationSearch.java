@@ -5,7 +5,6 @@ import utilities.Coordinate;
 
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
 
 import static world.WorldSpatial.Direction;
 
@@ -19,6 +18,10 @@ public class ExplorationSearch extends SearchStrategy {
     private Path mPath;
     private List<Path> mPastPaths;
     private boolean mNeedHealing; // determines whether to target healing tiles
+    /**
+     * Buffer for the neighbours of the node being expanded
+     */
+    private final int[] mNeighbours = new int[4];
 
     public ExplorationSearch() {
         mDirections = new ArrayList<>();
@@ -42,24 +45,13 @@ public class ExplorationSearch extends SearchStrategy {
         if (intermediateGoals.isEmpty()) {
             mPath = (search(map, initialPos, nearestFinalGoal(initialPos, finalGoals)));
         } else {
-            // Go to the nearest intermediateGoal with no damage available
-            intermediateGoals.sort(Comparator.comparingInt(c -> manhattanDistance(initialPos, c)));
-
-            List<Path> intermediatePaths = new ArrayList();
-            mPath = search(map, initialPos, intermediateGoals.get(0));
-            int minDamage = mPath.damage;
-
-            for (int i = 0; i < intermediateGoals.size(); i++) {
-
-                intermediatePaths.add(search(map, initialPos, intermediateGoals.get(i)));
-                int damage = intermediatePaths.get(i).damage;
-                if (damage <= minDamage) {
-                    mPath = intermediatePaths.get(i).clone();
-                    minDamage = damage;
-                    if (damage <= 0)
-                        break;
-                }
-            }
+            // Go to the intermediateGoal that does the least damage to reach, and is nearest among those
+            mPath = searchNearest(map, initialPos, intermediateGoals);
+        }
+        if (isCancelled()) {
+            // What was found isn't a path to follow, so keep it out of the history
+            mPath = new Path();
+            return;
         }
 
         if (!mPastPaths.contains(mPath)) {
@@ -112,61 +104,146 @@ public class ExplorationSearch extends SearchStrategy {
      * @return List of coordinates to get from start to goal
      */
     Path search(HashMap<Coordinate, MapTile> map, Coordinate start, Coordinate goal) {
+        SearchWorkspace workspace = beginSearch(map);
         // Evaluated nodes
-        List<Coordinate> closedSet = new ArrayList<>();
-        // Discovered but unevaluated nodes
-        List<Coordinate> openSet = new ArrayList<>(Collections.singleton(start));
+        BitSet closedSet = workspace.getClosedSet();
+        // Discovered but unevaluated nodes, ordered by dScore
+        IndexedMinHeap openSet = workspace.getOpenSet();
 
-        Map<Coordinate, Coordinate> cameFrom = new HashMap<>();
+        Path path = new Path();
+        int startNode = workspace.index(start);
+        if (startNode < 0) {
+            return path;
+        }
+        int goalNode = workspace.index(goal);
+        workspace.setGScore(startNode, 0);
+        workspace.setFScore(startNode, heuristicCost(start, goal));
+        // damage score, number of Lava tiles traversed
+        workspace.setDScore(startNode, 0);
+        openSet.add(startNode, workspace.getDScore(startNode));
 
-        Map<Coordinate, Integer> gScore = new DefaultDict<>(Integer.MAX_VALUE);
-        gScore.put(start, 0);
+        while (!openSet.isEmpty() && !isCancelled()) {
+            int current = openSet.poll();
+            nodeExpanded();
+            if (current == goalNode) {
+                path.path = workspace.reconstructPath(current);
+                path.damage = workspace.getDScore(current);
+                break;
+            }
 
-        Map<Coordinate, Integer> fScore = new DefaultDict<>(Integer.MAX_VALUE);
-        fScore.put(start, heuristicCost(start, goal));
+            closedSet.set(current);
 
-        // damage score, number of Lava tiles traversed
-        Map<Coordinate, Integer> dScore = new HashMap<>();
-        dScore.put(start, 0);
+            int neighbourCount = workspace.neighbours(current, map, mNeighbours);
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = mNeighbours[i];
+                if (closedSet.get(neighbour)) {
+                    continue;
+                }
+                Coordinate neighbourCoordinate = workspace.coordinate(neighbour);
+                MapTile tile = map.get(neighbourCoordinate);
+                int tentativeGScore = workspace.getGScore(current) + 1;
+                int tentativeDScore = workspace.getDScore(current);
+                if (tile instanceof HealthTrap) {
+                    if (mNeedHealing) // Check if the car needs repairs, if not this tile is no better than Road
+                        tentativeDScore -= HealthTrap.HealthDelta;
+                } else if (tile instanceof LavaTrap) {
+                    tentativeDScore += LavaTrap.HealthDelta;
+                } else if (tile.isType(MapTile.Type.UTILITY)) {
+                    tentativeGScore -= 1; // prioritise unknown tiles since we are exploring
+                } else if (tile instanceof TrapTile) {
+                    tentativeGScore += 100;
+                }
+
+                boolean discovered = openSet.contains(neighbour);
+                if (discovered && (tentativeDScore > workspace.getDScore(neighbour) ||
+                        (tentativeDScore == workspace.getDScore(neighbour) &&
+                                tentativeGScore >= workspace.getGScore(neighbour)))) {
+                    continue;
+                }
+                workspace.setCameFrom(neighbour, current);
+                workspace.setGScore(neighbour, tentativeGScore);
+                workspace.setFScore(neighbour, tentativeGScore + heuristicCost(neighbourCoordinate, goal));
+                workspace.setDScore(neighbour, tentativeDScore);
+                openSet.addOrUpdate(neighbour, tentativeDScore);
+            }
+        }
+        path.reverse();
+        return path;
+    }
+
+    /**
+     * Run a single Dijkstra flood from the start towards several goals at once.
+     *
+     * Nodes are expanded in order of damage taken, then distance travelled, so the first goal reached is the one
+     * that does the least damage to get to, with ties going to the nearest.
+     *
+     * @param map   Map we're navigating on
+     * @param start Coordinate to start search from
+     * @param goals Coordinates any of which can end the search
+     * @return Path to the best goal, or an empty path if none of them can be reached
+     */
+    Path searchNearest(HashMap<Coordinate, MapTile> map, Coordinate start, List<Coordinate> goals) {
+        SearchWorkspace workspace = beginSearch(map);
+        // Evaluated nodes
+        BitSet closedSet = workspace.getClosedSet();
+        // Discovered but unevaluated nodes, ordered by dScore then gScore
+        IndexedMinHeap openSet = workspace.getOpenSet();
+        BitSet goalSet = workspace.getGoalSet();
 
         Path path = new Path();
-        while (!openSet.isEmpty()) {
-            Coordinate current = openSet.stream().min(Comparator.comparingInt(dScore::get)).get();
-            if (current.equals(goal)) {
-                path = reconstructPath(cameFrom, current, dScore);
+        int startNode = workspace.index(start);
+        if (startNode < 0) {
+            return path;
+        }
+        for (Coordinate goal : goals) {
+            int goalNode = workspace.index(goal);
+            if (goalNode >= 0) {
+                goalSet.set(goalNode);
+            }
+        }
+        workspace.setGScore(startNode, 0);
+        workspace.setDScore(startNode, 0);
+        openSet.add(startNode, damageThenDistance(0, 0));
+
+        while (!openSet.isEmpty() && !isCancelled()) {
+            int current = openSet.poll();
+            nodeExpanded();
+            if (goalSet.get(current)) {
+                path.path = workspace.reconstructPath(current);
+                path.damage = workspace.getDScore(current);
                 break;
             }
 
-            openSet.remove(current);
-            closedSet.add(current);
+            closedSet.set(current);
 
-            for (Coordinate neighbour : getNeighbours(current, map)) {
-                if (closedSet.contains(neighbour)) {
+            int neighbourCount = workspace.neighbours(current, map, mNeighbours);
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = mNeighbours[i];
+                if (closedSet.get(neighbour)) {
                     continue;
                 }
-                int tentativeGScore = gScore.get(current) + 1;
-                int tentativeDScore = dScore.get(current);
-                if (map.get(neighbour) instanceof HealthTrap) {
+                MapTile tile = map.get(workspace.coordinate(neighbour));
+                int tentativeGScore = workspace.getGScore(current) + 1;
+                int tentativeDScore = workspace.getDScore(current);
+                if (tile instanceof HealthTrap) {
                     if (mNeedHealing) // Check if the car needs repairs, if not this tile is no better than Road
                         tentativeDScore -= HealthTrap.HealthDelta;
-                } else if (map.get(neighbour) instanceof LavaTrap) {
+                } else if (tile instanceof LavaTrap) {
                     tentativeDScore += LavaTrap.HealthDelta;
-                } else if (map.get(neighbour).isType(MapTile.Type.UTILITY)) {
+                } else if (tile.isType(MapTile.Type.UTILITY)) {
                     tentativeGScore -= 1; // prioritise unknown tiles since we are exploring
-                } else if (map.get(neighbour) instanceof TrapTile) {
+                } else if (tile instanceof TrapTile) {
                     tentativeGScore += 100;
                 }
 
-                if (!openSet.contains(neighbour)) {
-                    openSet.add(neighbour);
-                } else if (tentativeDScore > dScore.get(neighbour) ||
-                        (tentativeDScore == dScore.get(neighbour) && tentativeGScore >= gScore.get(neighbour))) {
+                long tentativeScore = damageThenDistance(tentativeDScore, tentativeGScore);
+                if (openSet.contains(neighbour) && tentativeScore >= openSet.priority(neighbour)) {
                     continue;
                 }
-                cameFrom.put(neighbour, current);
-                gScore.put(neighbour, tentativeGScore);
-                fScore.put(neighbour, gScore.get(neighbour) + heuristicCost(neighbour, goal));
-                dScore.put(neighbour, tentativeDScore);
+                workspace.setCameFrom(neighbour, current);
+                workspace.setGScore(neighbour, tentativeGScore);
+                workspace.setDScore(neighbour, tentativeDScore);
+                openSet.addOrUpdate(neighbour, tentativeScore);
             }
         }
         path.reverse();
@@ -174,24 +251,10 @@ public class ExplorationSearch extends SearchStrategy {
     }
 
     /**
-     * Get all the neighbours for the given node
-     *
-     * @param current Node to get neighbours from
-     * @param map     Map on which we can find the neighbours
-     * @return Node's neighbours
+     * Combine damage and distance into a single priority that orders by damage first and distance second.
      */
-    private List<Coordinate> getNeighbours(Coordinate current, HashMap<Coordinate, MapTile> map) {
-        List<Coordinate> possibleNeighbours = new ArrayList<>(Arrays.asList(
-                new Coordinate(current.x + 1, current.y),
-                new Coordinate(current.x - 1, current.y),
-                new Coordinate(current.x, current.y + 1),
-                new Coordinate(current.x, current.y - 1)
-        ));
-
-        return possibleNeighbours.stream().filter(coordinate -> {
-            MapTile tile = map.get(coordinate);
-            return tile != null && !(tile.isType(MapTile.Type.WALL) || tile instanceof MudTrap || tile.isType(MapTile.Type.EMPTY));
-        }).collect(Collectors.toList());
+    private long damageThenDistance(int damage, int distance) {
+        return ((long) damage << 32) + distance;
     }
 
     /**
@@ -210,22 +273,4 @@ public class ExplorationSearch extends SearchStrategy {
         return Math.abs(coordinate1.x - coordinate2.x) + Math.abs(coordinate1.y - coordinate2.y);
     }
 
-    /**
-     * Reconstruct the path using the map of nodes built during the search.
-     *
-     * @param cameFrom Map of shortest paths from one node to another
-     * @param current  Node to start constructing path from
-     * @return Reconstructed path
-     */
-    private Path reconstructPath(Map<Coordinate, Coordinate> cameFrom, Coordinate current, Map<Coordinate, Integer> damage) {
-        Path path = new Path();
-        path.damage = damage.get(current);
-        path.path = new ArrayList<>(Collections.singleton(current));
-        while (cameFrom.containsKey(current)) {
-            current = cameFrom.get(current);
-            path.add(current, 0);
-        }
-        return path;
-    }
-
 }
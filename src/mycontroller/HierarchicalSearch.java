@@ -0,0 +1,492 @@
+package mycontroller;
+
+import tiles.MapTile;
+import utilities.Coordinate;
+
+import java.util.*;
+
+/**
+ * Hierarchical path-finding A* (HPA*) for reaching keys, health and exits on large maps.
+ *
+ * The map is cut into square clusters. Wherever a run of passable tiles crosses the border between two clusters, one
+ * or two entrances are placed on it, and the cost between every pair of entrances of a cluster is found once with a
+ * flood that stays inside the cluster. Queries then search this much smaller abstract graph of entrances, and only the
+ * part of the route inside the car's own cluster, up to where it crosses into the next one, is refined into tiles.
+ * The controller replans every update, so the rest of the route never needs to be refined.
+ *
+ * Tiles reported through mapChanged() only mark their cluster, and the clusters across its border, for rebuilding
+ * before the next query. Queries whose start and goal are close together are answered with a plain A* search.
+ *
+ * Edge costs come from AStarSearch.stepCost(), as the cached distances need them to be non-negative.
+ */
+public class HierarchicalSearch extends AStarSearch {
+    /**
+     * Maps with more tiles than this are large enough to be worth searching hierarchically
+     */
+    static final int LARGE_MAP_TILES = 128 * 128;
+    private static final int DEFAULT_CLUSTER_SIZE = 16;
+    /**
+     * Border runs at least this long get an entrance at both ends rather than one in the middle
+     */
+    private static final int LONG_ENTRANCE = 6;
+    private static final int INFINITY = Integer.MAX_VALUE / 4;
+    private static final int[] NONE = new int[0];
+
+    private final int mClusterSize;
+    /**
+     * Grid indexing and scratch space for floods inside a cluster
+     */
+    private final SearchWorkspace mGrid = new SearchWorkspace();
+    private final int[] mNeighbours = new int[4];
+    /**
+     * Tiles that have changed since the abstract graph was last brought up to date
+     */
+    private final List<Coordinate> mChangedTiles = new ArrayList<>();
+
+    private HashMap<Coordinate, MapTile> mMap;
+    private int mMapSize = -1;
+    private Set<Integer> mKeysCollected = new HashSet<>();
+    private int mClustersX, mClustersY;
+    /**
+     * Pairs of tiles crossing each cluster's east and north border, flattened as [inside, outside, inside, ...]
+     */
+    private int[][] mEastCrossings, mNorthCrossings;
+    /**
+     * Entrance tiles of each cluster
+     */
+    private int[][] mEntrances;
+    /**
+     * mIntraCost[c][i * k + j] is the cost from entrance i to entrance j of cluster c, staying inside the cluster
+     */
+    private int[][] mIntraCost;
+
+    // Connections of the current query's start and goal to the entrances of their clusters
+    private int mStartNode, mGoalNode;
+    private int mStartCluster, mGoalCluster;
+    private int[] mStartCost = NONE, mGoalCost = NONE;
+
+    public HierarchicalSearch() {
+        this(DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * @param clusterSize Width and height of a cluster in tiles
+     */
+    public HierarchicalSearch(int clusterSize) {
+        mClusterSize = clusterSize;
+    }
+
+    @Override
+    public void mapChanged(List<Coordinate> changedTiles) {
+        super.mapChanged(changedTiles);
+        mChangedTiles.addAll(changedTiles);
+    }
+
+    /**
+     * Find the start of a path between two points by searching the abstract graph.
+     *
+     * @param map   Map we're navigating on
+     * @param start Coordinate to start search from
+     * @param goal  Coordinate to end search on
+     * @return List of coordinates from the start into the next cluster on the route, or all the way to the goal if it
+     * is in the start's cluster or close to it
+     */
+    @Override
+    protected List<Coordinate> search(HashMap<Coordinate, MapTile> map, Coordinate start, Coordinate goal,
+                                      Set<Integer> keysCollected) {
+        if (map != mMap || map.size() != mMapSize || !keysCollected.equals(mKeysCollected)) {
+            build(map, keysCollected);
+        } else {
+            rebuildChangedClusters();
+        }
+        mStartNode = mGrid.index(start);
+        mGoalNode = mGrid.index(goal);
+        if (mStartNode < 0 || mGoalNode < 0) {
+            return new ArrayList<>();
+        }
+        mStartCluster = cluster(mStartNode);
+        mGoalCluster = cluster(mGoalNode);
+        if (mStartCluster == mGoalCluster || manhattanDistance(start, goal) < 2 * mClusterSize) {
+            return super.search(map, start, goal, keysCollected);
+        }
+
+        mGoalCost = entranceCosts(mGoalNode, mGoalCluster, true);
+        mStartCost = entranceCosts(mStartNode, mStartCluster, false);
+        List<Coordinate> abstractPath = abstractSearch(goal);
+        return refineStart(abstractPath);
+    }
+
+    /**
+     * Build the abstract graph for a map from scratch.
+     */
+    private void build(HashMap<Coordinate, MapTile> map, Set<Integer> keysCollected) {
+        mMap = map;
+        mMapSize = map.size();
+        mKeysCollected = new HashSet<>(keysCollected);
+        mChangedTiles.clear();
+        mGrid.begin(map);
+        mClustersX = (mGrid.getWidth() + mClusterSize - 1) / mClusterSize;
+        mClustersY = (mGrid.getHeight() + mClusterSize - 1) / mClusterSize;
+        int clusters = mClustersX * mClustersY;
+        mEastCrossings = new int[clusters][];
+        mNorthCrossings = new int[clusters][];
+        mEntrances = new int[clusters][];
+        mIntraCost = new int[clusters][];
+        for (int c = 0; c < clusters; c++) {
+            findCrossings(c);
+        }
+        for (int c = 0; c < clusters; c++) {
+            buildCluster(c);
+        }
+    }
+
+    /**
+     * Rebuild only the clusters containing tiles that have changed since the last query. A changed tile on a cluster's
+     * edge can add or remove a crossing, which changes the entrances of the cluster on the other side too.
+     */
+    private void rebuildChangedClusters() {
+        if (mChangedTiles.isEmpty()) {
+            return;
+        }
+        Set<Integer> changedBorders = new HashSet<>();
+        Set<Integer> changedClusters = new HashSet<>();
+        for (Coordinate coordinate : mChangedTiles) {
+            int node = mGrid.index(coordinate);
+            if (node < 0) {
+                continue;
+            }
+            int c = cluster(node);
+            changedClusters.add(c);
+            int x = node % mGrid.getWidth() % mClusterSize;
+            int y = node / mGrid.getWidth() % mClusterSize;
+            if (x == 0 || y == 0 || x == mClusterSize - 1 || y == mClusterSize - 1) {
+                int cx = c % mClustersX;
+                int cy = c / mClustersX;
+                changedBorders.add(c);
+                if (cx > 0) {
+                    changedBorders.add(c - 1);
+                    changedClusters.add(c - 1);
+                }
+                if (cy > 0) {
+                    changedBorders.add(c - mClustersX);
+                    changedClusters.add(c - mClustersX);
+                }
+                if (cx + 1 < mClustersX) changedClusters.add(c + 1);
+                if (cy + 1 < mClustersY) changedClusters.add(c + mClustersX);
+            }
+        }
+        mChangedTiles.clear();
+        for (int c : changedBorders) {
+            findCrossings(c);
+        }
+        for (int c : changedClusters) {
+            buildCluster(c);
+        }
+    }
+
+    /**
+     * Place the crossings on a cluster's east and north borders.
+     */
+    private void findCrossings(int c) {
+        int width = mGrid.getWidth();
+        int left = c % mClustersX * mClusterSize;
+        int bottom = c / mClustersX * mClusterSize;
+        int right = Math.min(left + mClusterSize, width) - 1;
+        int top = Math.min(bottom + mClusterSize, mGrid.getHeight()) - 1;
+
+        List<Integer> east = new ArrayList<>();
+        if (right + 1 < width) {
+            findCrossings(bottom * width + right, width, 1, top - bottom + 1, east);
+        }
+        List<Integer> north = new ArrayList<>();
+        if (top + 1 < mGrid.getHeight()) {
+            findCrossings(top * width + left, 1, width, right - left + 1, north);
+        }
+        mEastCrossings[c] = toArray(east);
+        mNorthCrossings[c] = toArray(north);
+    }
+
+    /**
+     * Walk along a border and add a crossing for each run of tiles that are passable on both sides.
+     *
+     * @param first  Inside tile at the start of the border
+     * @param along  Index step along the border
+     * @param across Index step from an inside tile to the outside tile facing it
+     * @param length Length of the border
+     * @param pairs  List the crossings are added to, as inside and outside tile pairs
+     */
+    private void findCrossings(int first, int along, int across, int length, List<Integer> pairs) {
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            int inside = first + i * along;
+            boolean open = i < length && isPassable(inside) && isPassable(inside + across);
+            if (open && runStart < 0) {
+                runStart = i;
+            } else if (!open && runStart >= 0) {
+                int runLength = i - runStart;
+                if (runLength < LONG_ENTRANCE) {
+                    int middle = first + (runStart + runLength / 2) * along;
+                    pairs.add(middle);
+                    pairs.add(middle + across);
+                } else {
+                    int low = first + runStart * along;
+                    int high = first + (i - 1) * along;
+                    pairs.add(low);
+                    pairs.add(low + across);
+                    pairs.add(high);
+                    pairs.add(high + across);
+                }
+                runStart = -1;
+            }
+        }
+    }
+
+    /**
+     * Collect a cluster's entrances from the crossings on its four borders, and cache the costs between them.
+     */
+    private void buildCluster(int c) {
+        int cx = c % mClustersX;
+        int cy = c / mClustersX;
+        List<Integer> entrances = new ArrayList<>();
+        addEntrances(mEastCrossings[c], 0, entrances);
+        addEntrances(mNorthCrossings[c], 0, entrances);
+        if (cx > 0) addEntrances(mEastCrossings[c - 1], 1, entrances);
+        if (cy > 0) addEntrances(mNorthCrossings[c - mClustersX], 1, entrances);
+        int[] entranceNodes = toArray(entrances);
+
+        int count = entranceNodes.length;
+        int[] costs = new int[count * count];
+        for (int i = 0; i < count; i++) {
+            flood(entranceNodes[i], c, false);
+            for (int j = 0; j < count; j++) {
+                costs[i * count + j] = cost(entranceNodes[j]);
+            }
+        }
+        mEntrances[c] = entranceNodes;
+        mIntraCost[c] = costs;
+    }
+
+    private void addEntrances(int[] crossings, int side, List<Integer> entrances) {
+        for (int i = side; i < crossings.length; i += 2) {
+            if (!entrances.contains(crossings[i])) {
+                entrances.add(crossings[i]);
+            }
+        }
+    }
+
+    /**
+     * Costs between a tile and each entrance of its cluster, staying inside the cluster.
+     *
+     * @param node    Tile to connect
+     * @param c       Cluster of the tile
+     * @param reverse True for the cost from each entrance to the tile, false for the cost from the tile to each one
+     */
+    private int[] entranceCosts(int node, int c, boolean reverse) {
+        int[] entrances = mEntrances[c];
+        int[] costs = new int[entrances.length];
+        flood(node, c, reverse);
+        for (int i = 0; i < entrances.length; i++) {
+            costs[i] = cost(entrances[i]);
+        }
+        return costs;
+    }
+
+    /**
+     * A* over the entrances, from the query's start to its goal.
+     *
+     * @return Nodes of the abstract path from the start to the goal, or an empty list if there is none
+     */
+    private List<Coordinate> abstractSearch(Coordinate goal) {
+        SearchWorkspace workspace = beginSearch(mMap);
+        BitSet closedSet = workspace.getClosedSet();
+        IndexedMinHeap openSet = workspace.getOpenSet();
+
+        workspace.setGScore(mStartNode, 0);
+        openSet.add(mStartNode, heuristicCost(workspace.coordinate(mStartNode), goal));
+        while (!openSet.isEmpty() && !isCancelled()) {
+            int current = openSet.poll();
+            nodeExpanded();
+            if (current == mGoalNode) {
+                List<Coordinate> path = workspace.reconstructPath(current);
+                Collections.reverse(path);
+                return path;
+            }
+            closedSet.set(current);
+
+            if (current == mStartNode) {
+                relaxAll(workspace, current, mEntrances[mStartCluster], mStartCost, 0, 1, goal);
+            }
+            int c = cluster(current);
+            int[] entrances = mEntrances[c];
+            int i = indexOf(entrances, current);
+            if (i < 0) {
+                continue;
+            }
+            // Across the cluster
+            relaxAll(workspace, current, entrances, mIntraCost[c], i * entrances.length, 1, goal);
+            // Into the goal
+            if (c == mGoalCluster) {
+                relax(workspace, current, mGoalNode, mGoalCost[i], goal);
+            }
+            // Over the borders
+            int cx = c % mClustersX;
+            int cy = c / mClustersX;
+            relaxCrossings(workspace, current, mEastCrossings[c], 0, goal);
+            relaxCrossings(workspace, current, mNorthCrossings[c], 0, goal);
+            if (cx > 0) relaxCrossings(workspace, current, mEastCrossings[c - 1], 1, goal);
+            if (cy > 0) relaxCrossings(workspace, current, mNorthCrossings[c - mClustersX], 1, goal);
+        }
+        return new ArrayList<>();
+    }
+
+    private void relaxAll(SearchWorkspace workspace, int current, int[] targets, int[] costs, int offset, int stride,
+                          Coordinate goal) {
+        for (int j = 0; j < targets.length; j++) {
+            relax(workspace, current, targets[j], costs[offset + j * stride], goal);
+        }
+    }
+
+    /**
+     * Relax the edges over a border from whichever of its crossings start at the current node.
+     *
+     * @param side 0 if the current node is on the inside of the crossings, 1 if it is on the outside
+     */
+    private void relaxCrossings(SearchWorkspace workspace, int current, int[] crossings, int side, Coordinate goal) {
+        for (int i = side; i < crossings.length; i += 2) {
+            if (crossings[i] == current) {
+                int other = crossings[i + 1 - 2 * side];
+                relax(workspace, current, other, stepCost(mMap.get(mGrid.coordinate(other)), mKeysCollected), goal);
+            }
+        }
+    }
+
+    private void relax(SearchWorkspace workspace, int current, int neighbour, int cost, Coordinate goal) {
+        if (neighbour == current || cost >= INFINITY || workspace.getClosedSet().get(neighbour)) {
+            return;
+        }
+        IndexedMinHeap openSet = workspace.getOpenSet();
+        int tentativeGScore = workspace.getGScore(current) + cost;
+        if (openSet.contains(neighbour) && tentativeGScore >= workspace.getGScore(neighbour)) {
+            return;
+        }
+        workspace.setCameFrom(neighbour, current);
+        workspace.setGScore(neighbour, tentativeGScore);
+        openSet.addOrUpdate(neighbour, tentativeGScore + heuristicCost(workspace.coordinate(neighbour), goal));
+    }
+
+    /**
+     * Turn the abstract path into tiles as far as the first tile outside the start's cluster, or the goal if the path
+     * doesn't leave the cluster before reaching it.
+     */
+    private List<Coordinate> refineStart(List<Coordinate> abstractPath) {
+        List<Coordinate> path = new ArrayList<>();
+        if (abstractPath.isEmpty()) {
+            return path;
+        }
+        path.add(abstractPath.get(0));
+        for (int i = 1; i < abstractPath.size(); i++) {
+            int from = mGrid.index(abstractPath.get(i - 1));
+            int to = mGrid.index(abstractPath.get(i));
+            if (cluster(from) != cluster(to)) {
+                // Crossing a border is a single step
+                path.add(abstractPath.get(i));
+                break;
+            }
+            List<Coordinate> segment = clusterPath(from, to);
+            if (segment.isEmpty()) {
+                return new ArrayList<>();
+            }
+            path.addAll(segment.subList(1, segment.size()));
+        }
+        return path;
+    }
+
+    /**
+     * Cheapest path between two tiles of the same cluster that stays inside the cluster.
+     */
+    private List<Coordinate> clusterPath(int from, int to) {
+        flood(from, cluster(from), false);
+        if (cost(to) >= INFINITY) {
+            return new ArrayList<>();
+        }
+        List<Coordinate> path = mGrid.reconstructPath(to);
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Dijkstra flood from a tile over the tiles of one cluster. Costs and parents are left in mGrid.
+     *
+     * @param source  Tile to flood from
+     * @param c       Cluster to stay inside
+     * @param reverse True to find the cost of reaching the source from each tile, rather than the other way around
+     */
+    private void flood(int source, int c, boolean reverse) {
+        mGrid.begin(mMap);
+        BitSet closedSet = mGrid.getClosedSet();
+        IndexedMinHeap openSet = mGrid.getOpenSet();
+        if (!isPassable(source)) {
+            return;
+        }
+        mGrid.setGScore(source, 0);
+        openSet.add(source, 0);
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            nodeExpanded();
+            closedSet.set(current);
+            // Going forwards each step costs the tile entered, going backwards the tile left
+            int leaveCost = reverse ? tileCost(current) : 0;
+            int neighbourCount = mGrid.neighbours(current, mMap, mNeighbours);
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = mNeighbours[i];
+                if (closedSet.get(neighbour) || cluster(neighbour) != c) {
+                    continue;
+                }
+                int tentativeGScore = mGrid.getGScore(current) + (reverse ? leaveCost : tileCost(neighbour));
+                if (tentativeGScore < mGrid.getGScore(neighbour)) {
+                    mGrid.setCameFrom(neighbour, current);
+                    mGrid.setGScore(neighbour, tentativeGScore);
+                    openSet.addOrUpdate(neighbour, tentativeGScore);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cost of a tile found by the last flood.
+     */
+    private int cost(int node) {
+        int cost = mGrid.getGScore(node);
+        return cost == SearchWorkspace.UNREACHED ? INFINITY : cost;
+    }
+
+    private int tileCost(int node) {
+        return stepCost(mMap.get(mGrid.coordinate(node)), mKeysCollected);
+    }
+
+    private boolean isPassable(int node) {
+        return SearchWorkspace.isPassable(mMap.get(mGrid.coordinate(node)));
+    }
+
+    private int cluster(int node) {
+        int width = mGrid.getWidth();
+        return node / width / mClusterSize * mClustersX + node % width / mClusterSize;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
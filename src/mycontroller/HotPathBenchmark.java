@@ -0,0 +1,405 @@
+package mycontroller;
+
+import tiles.LavaTrap;
+import tiles.MapTile;
+import utilities.Coordinate;
+import world.Car;
+import world.CarView;
+import world.TmxMapReader;
+import world.World;
+import world.WorldSpatial;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Measures the hot paths of a run on the bundled maps and on generated ones, so that changes to them can be checked
+ * for regressions: searching, planning the key tour, looking up tiles, copying the car's view and turning paths into
+ * directions.
+ *
+ * Each benchmark is run for a number of warm-up iterations, so that the timings are of compiled code, and then for a
+ * number of measured iterations of a fixed length. For each it reports throughput with its standard deviation across
+ * iterations, average time per operation, and bytes allocated per operation by the benchmark thread. Run from the
+ * project root with the libraries on the classpath:
+ *
+ *     java mycontroller.HotPathBenchmark [-warmup n] [-iterations n] [-time ms] [-filter text]
+ *                                        [-json file] [-csv file] [map.tmx ...]
+ *
+ * With no maps given the bundled maps in assets/ are used. -filter runs only the benchmarks whose name or map contains
+ * the text. -json and -csv also write the results to a file, one record per benchmark and map, to compare runs with.
+ */
+public class HotPathBenchmark {
+    private static final String[] BUNDLED_MAPS = SearchBenchmark.BUNDLED_MAPS;
+    private static final int[] SYNTHETIC_SIZES = {64, 256};
+    private static final int QUERIES = 64;
+    private static final long SEED = 30006;
+    /**
+     * Size of the generated map, and number of keys with the tiles each is on, that the key tour is timed on
+     */
+    private static final int KEY_TOUR_SIZE = 80;
+    private static final int KEY_TOUR_KEYS = KeyTourPlanner.MAX_KEYS;
+    private static final int KEY_TOUR_TILES_PER_KEY = 2;
+    /**
+     * Controller the worlds are built with. It is never updated, it only has to be cheap to make.
+     */
+    private static final String CONTROLLER = "controller.AIController";
+    /**
+     * Shortest time a batch of operations is timed over, so that reading the clock doesn't swamp fast operations
+     */
+    private static final long MIN_BATCH_NANOS = 100_000;
+
+    /**
+     * Results are compared against this so the JIT can't drop the operations producing them. It is never equal.
+     */
+    private static volatile Object sNever = new Object();
+    private static int sSink;
+
+    private int mWarmup = 5;
+    private int mIterations = 5;
+    private long mIterationNanos = 1_000_000_000L;
+    private String mFilter = "";
+    private final List<Result> mResults = new ArrayList<>();
+
+    /**
+     * Measurements of one benchmark on one map
+     */
+    private static class Result {
+        final String benchmark;
+        final String map;
+        final double opsPerSecond;
+        final double opsPerSecondError;
+        final double nanosPerOp;
+        final double bytesPerOp;
+        final long ops;
+
+        Result(String benchmark, String map, double opsPerSecond, double opsPerSecondError, double nanosPerOp,
+               double bytesPerOp, long ops) {
+            this.benchmark = benchmark;
+            this.map = map;
+            this.opsPerSecond = opsPerSecond;
+            this.opsPerSecondError = opsPerSecondError;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.ops = ops;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        HotPathBenchmark benchmark = new HotPathBenchmark();
+        String jsonFile = null;
+        String csvFile = null;
+        List<String> maps = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-warmup") && i + 1 < args.length) {
+                benchmark.mWarmup = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-iterations") && i + 1 < args.length) {
+                benchmark.mIterations = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-time") && i + 1 < args.length) {
+                benchmark.mIterationNanos = Long.parseLong(args[++i]) * 1_000_000L;
+            } else if (args[i].equals("-filter") && i + 1 < args.length) {
+                benchmark.mFilter = args[++i];
+            } else if (args[i].equals("-json") && i + 1 < args.length) {
+                jsonFile = args[++i];
+            } else if (args[i].equals("-csv") && i + 1 < args.length) {
+                csvFile = args[++i];
+            } else {
+                maps.add(args[i]);
+            }
+        }
+        if (maps.isEmpty()) {
+            maps.addAll(Arrays.asList(BUNDLED_MAPS));
+        }
+
+        System.out.printf("%-40s %-20s %14s %12s %14s %12s%n",
+                "benchmark", "map", "ops/s", "+- ops/s", "ns/op", "B/op");
+        for (String mapPath : maps) {
+            TmxMapReader reader = TmxMapReader.read(mapPath);
+            String name = mapPath.substring(mapPath.lastIndexOf('/') + 1).replace(".tmx", "");
+            benchmark.searches(name, reader.getTiles());
+            benchmark.world(name, reader);
+        }
+        for (int size : SYNTHETIC_SIZES) {
+            benchmark.searches("synthetic-" + size, synthetic(size, SEED));
+        }
+        benchmark.keyTour("synthetic-" + KEY_TOUR_SIZE + "-keys-" + KEY_TOUR_KEYS);
+
+        if (jsonFile != null) {
+            benchmark.writeJson(jsonFile);
+        }
+        if (csvFile != null) {
+            benchmark.writeCsv(csvFile);
+        }
+    }
+
+    /**
+     * Benchmark the searches and turning their paths into directions on a map the controller has fully revealed.
+     */
+    private void searches(String mapName, HashMap<Coordinate, MapTile> map) {
+        List<Coordinate[]> queries = SearchBenchmark.queries(map, QUERIES, SEED);
+        Set<Integer> noKeys = Collections.emptySet();
+
+        AStarSearch aStar = new AStarSearch();
+        run("AStarSearch.search", mapName, i -> {
+            Coordinate[] query = queries.get(i % queries.size());
+            return aStar.search(map, query[0], query[1], noKeys);
+        });
+
+        ExplorationSearch exploration = new ExplorationSearch();
+        run("ExplorationSearch.search", mapName, i -> {
+            Coordinate[] query = queries.get(i % queries.size());
+            return exploration.search(map, query[0], query[1]);
+        });
+
+        List<List<Coordinate>> paths = new ArrayList<>();
+        for (Coordinate[] query : queries) {
+            List<Coordinate> path = aStar.search(map, query[0], query[1], noKeys);
+            if (path.size() > 1) {
+                paths.add(path);
+            }
+        }
+        if (!paths.isEmpty()) {
+            run("SearchStrategy.toRelativeDirection", mapName,
+                    i -> aStar.toRelativeDirection(paths.get(i % paths.size()), WorldSpatial.Direction.EAST));
+        }
+    }
+
+    /**
+     * Benchmark choosing the next key with KeyTourPlanner at its largest number of keys. Each operation of the first
+     * is a new map version that leaves the distances between the keys as they were, as most tiles the car reveals
+     * do, and each of the second switches exits so the whole tour has to be solved again. The third is a new map
+     * version under the controller's time budget, switching exits every 64 operations, so it measures how long one
+     * call takes when the tour is worked out over many calls.
+     */
+    private void keyTour(String mapName) {
+        HashMap<Coordinate, MapTile> map = synthetic(KEY_TOUR_SIZE, SEED);
+        Random random = new Random(SEED);
+        AStarSearch search = new AStarSearch();
+        Set<Integer> noKeys = Collections.emptySet();
+        Coordinate start = new Coordinate(1, 1);
+        map.put(start, MapTile.shared(MapTile.Type.ROAD));
+
+        // Put keys and exits on tiles the start can reach
+        List<Coordinate> keyTiles = new ArrayList<>();
+        List<Coordinate> exits = new ArrayList<>();
+        int wanted = KEY_TOUR_KEYS * KEY_TOUR_TILES_PER_KEY + 2;
+        while (keyTiles.size() + exits.size() < wanted) {
+            Coordinate tile = new Coordinate(1 + random.nextInt(KEY_TOUR_SIZE - 2),
+                    1 + random.nextInt(KEY_TOUR_SIZE - 2));
+            if (!map.get(tile).isType(MapTile.Type.ROAD) || tile.equals(start) ||
+                    search.search(map, start, tile, noKeys).isEmpty()) {
+                continue;
+            }
+            if (keyTiles.size() < KEY_TOUR_KEYS * KEY_TOUR_TILES_PER_KEY) {
+                LavaTrap key = new LavaTrap();
+                key.setKey(1 + keyTiles.size() % KEY_TOUR_KEYS);
+                map.put(tile, key);
+                keyTiles.add(tile);
+            } else {
+                map.put(tile, MapTile.shared(MapTile.Type.FINISH));
+                exits.add(tile);
+            }
+        }
+        List<List<Coordinate>> exitChoices = Arrays.asList(exits.subList(0, 1), exits.subList(1, 2));
+
+        KeyTourPlanner planner = new KeyTourPlanner(search);
+        run("KeyTourPlanner.nextKey (map changed)", mapName,
+                i -> planner.nextKey(map, i, start, keyTiles, exitChoices.get(0), noKeys));
+        run("KeyTourPlanner.nextKey (tour changed)", mapName,
+                i -> planner.nextKey(map, 0, start, keyTiles, exitChoices.get(i % 2), noKeys));
+
+        AStarSearch budgeted = new AStarSearch();
+        budgeted.setTimeBudget(MyAIController.SEARCH_TIME_BUDGET);
+        KeyTourPlanner budgetedPlanner = new KeyTourPlanner(budgeted);
+        // Calls made, and the furthest past the deadline one finished
+        long[] calls = new long[2];
+        run("KeyTourPlanner.nextKey (budgeted)", mapName, i -> {
+            budgeted.startBudget();
+            Coordinate next = budgetedPlanner.nextKey(map, i, start, keyTiles, exitChoices.get(i / 64 % 2), noKeys);
+            budgeted.endBudget();
+            calls[0]++;
+            calls[1] = Math.max(calls[1], System.nanoTime() - budgeted.getDeadline());
+            return next;
+        });
+        if (calls[0] > 0) {
+            // Planning stops at the first check past the deadline, so most calls overrun a little. The flood from the
+            // car is outside the budget, so a call can overrun by as much as that takes.
+            System.out.printf("%-40s %-20s %d of %d calls past the %d ms budget, by at most %.2f ms%n",
+                    "  budget overruns", mapName, budgeted.getBudgetOverruns(), calls[0],
+                    MyAIController.SEARCH_TIME_BUDGET / 1_000_000, calls[1] / 1e6);
+        }
+    }
+
+    /**
+     * Benchmark reading the world through the car from its start position.
+     */
+    private void world(String mapName, TmxMapReader reader) {
+        World world = new World(reader, CONTROLLER);
+        Car car = world.getCar();
+        CarView view = car.getCarView();
+        int side = 2 * view.getViewSquare() + 1;
+        int cells = side * side;
+        // World.lookUp() is only reachable outside the world package through the car's view
+        run("World.lookUp (CarView.tileAt)", mapName, i -> {
+            int cell = i % cells;
+            return view.tileAtOffset(cell % side - view.getViewSquare(), cell / side - view.getViewSquare());
+        });
+        run("Car.getView", mapName, i -> car.getView());
+    }
+
+    /**
+     * Warm up and measure one benchmark, unless the filter leaves it out.
+     *
+     * @param operation Runs operation number i and returns its result
+     */
+    private void run(String benchmark, String mapName, IntFunction<Object> operation) {
+        if (!benchmark.contains(mFilter) && !mapName.contains(mFilter)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = allocationBean();
+        long threadId = Thread.currentThread().getId();
+
+        // Grow the batch until timing it is cheap next to running it
+        int batch = 1;
+        while (true) {
+            long start = System.nanoTime();
+            runBatch(operation, 0, batch);
+            if (System.nanoTime() - start >= MIN_BATCH_NANOS || batch >= 1 << 24) {
+                break;
+            }
+            batch *= 2;
+        }
+
+        for (int i = 0; i < mWarmup; i++) {
+            iteration(operation, batch);
+        }
+        double[] throughputs = new double[mIterations];
+        long totalOps = 0;
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < mIterations; i++) {
+            long bytesBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(threadId);
+            long[] opsAndNanos = iteration(operation, batch);
+            long bytes = threads == null ? 0 : threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+            throughputs[i] = opsAndNanos[0] * 1e9 / opsAndNanos[1];
+            totalOps += opsAndNanos[0];
+            totalNanos += opsAndNanos[1];
+            totalBytes += bytes;
+        }
+
+        double mean = 0;
+        for (double throughput : throughputs) {
+            mean += throughput;
+        }
+        mean /= throughputs.length;
+        double variance = 0;
+        for (double throughput : throughputs) {
+            variance += (throughput - mean) * (throughput - mean);
+        }
+        double error = throughputs.length > 1 ? Math.sqrt(variance / (throughputs.length - 1)) : 0;
+        Result result = new Result(benchmark, mapName, mean, error, totalNanos / (double) totalOps,
+                threads == null ? Double.NaN : totalBytes / (double) totalOps, totalOps);
+        mResults.add(result);
+        System.out.printf("%-40s %-20s %14.1f %12.1f %14.1f %12.1f%n", result.benchmark, result.map,
+                result.opsPerSecond, result.opsPerSecondError, result.nanosPerOp, result.bytesPerOp);
+    }
+
+    /**
+     * Run batches of the operation for one iteration's time.
+     *
+     * @return Number of operations run and the time they took
+     */
+    private long[] iteration(IntFunction<Object> operation, int batch) {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            runBatch(operation, (int) ops, batch);
+            ops += batch;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < mIterationNanos);
+        return new long[]{ops, elapsed};
+    }
+
+    private static void runBatch(IntFunction<Object> operation, int first, int batch) {
+        for (int i = 0; i < batch; i++) {
+            if (operation.apply((first + i) & Integer.MAX_VALUE) == sNever) {
+                sSink++;
+            }
+        }
+    }
+
+    /**
+     * The thread bean if this JVM can count the bytes each thread allocates, otherwise null.
+     */
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /**
+     * Make a square map with a wall around it and walls and lava scattered inside, in the controller's coordinates.
+     */
+    static HashMap<Coordinate, MapTile> synthetic(int size, long seed) {
+        Random random = new Random(seed);
+        HashMap<Coordinate, MapTile> map = new HashMap<>();
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                MapTile tile;
+                double roll = random.nextDouble();
+                if (x == 0 || y == 0 || x == size - 1 || y == size - 1 || roll < 0.2) {
+                    tile = MapTile.shared(MapTile.Type.WALL);
+                } else if (roll < 0.25) {
+                    tile = new LavaTrap();
+                } else {
+                    tile = MapTile.shared(MapTile.Type.ROAD);
+                }
+                map.put(new Coordinate(x, y), tile);
+            }
+        }
+        return map;
+    }
+
+    private void writeJson(String file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("[");
+            for (int i = 0; i < mResults.size(); i++) {
+                Result result = mResults.get(i);
+                out.printf(Locale.ROOT, "  {\"benchmark\": \"%s\", \"map\": \"%s\", \"opsPerSecond\": %s, " +
+                                "\"opsPerSecondError\": %s, \"nanosPerOp\": %s, \"bytesPerOp\": %s, \"ops\": %d}%s%n",
+                        result.benchmark, result.map, json(result.opsPerSecond), json(result.opsPerSecondError),
+                        json(result.nanosPerOp), json(result.bytesPerOp), result.ops,
+                        i + 1 < mResults.size() ? "," : "");
+            }
+            out.println("]");
+        }
+    }
+
+    private void writeCsv(String file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("benchmark,map,opsPerSecond,opsPerSecondError,nanosPerOp,bytesPerOp,ops");
+            for (Result result : mResults) {
+                out.printf(Locale.ROOT, "\"%s\",%s,%.3f,%.3f,%.3f,%.3f,%d%n", result.benchmark, result.map,
+                        result.opsPerSecond, result.opsPerSecondError, result.nanosPerOp, result.bytesPerOp,
+                        result.ops);
+            }
+        }
+    }
+
+    /**
+     * Format a number for JSON, which has no NaN.
+     */
+    private static String json(double value) {
+        return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%.3f", value);
+    }
+}
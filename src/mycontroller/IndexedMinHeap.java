@@ -0,0 +1,236 @@
+package mycontroller;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over grid node indices that supports decrease-key.
+ *
+ * Each node is queued at most once. Nodes with equal priority are polled in the order they were first added, which
+ * matches the behaviour of taking the minimum of an insertion-ordered list.
+ */
+class IndexedMinHeap {
+    /**
+     * Heap slot to node index
+     */
+    private int[] mHeap;
+    /**
+     * Node index to heap slot, or -1 when the node is not queued
+     */
+    private int[] mPositions;
+    /**
+     * Node index to its current priority
+     */
+    private long[] mPriorities;
+    /**
+     * Node index to the order in which it was added, used to break ties
+     */
+    private int[] mOrder;
+    private int mSize;
+    private int mNextOrder;
+
+    IndexedMinHeap() {
+        this(0);
+    }
+
+    IndexedMinHeap(int capacity) {
+        mHeap = new int[capacity];
+        mPositions = new int[capacity];
+        mPriorities = new long[capacity];
+        mOrder = new int[capacity];
+        Arrays.fill(mPositions, -1);
+    }
+
+    /**
+     * Make sure node indices in the range [0, capacity) can be queued. Grows the heap if needed, which also clears it.
+     *
+     * @param capacity Number of nodes in the graph
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity <= mPositions.length) {
+            return;
+        }
+        mHeap = new int[capacity];
+        mPositions = new int[capacity];
+        mPriorities = new long[capacity];
+        mOrder = new int[capacity];
+        Arrays.fill(mPositions, -1);
+        mSize = 0;
+        mNextOrder = 0;
+    }
+
+    /**
+     * Make room for node indices in the range [0, capacity) while keeping the nodes already queued, for graphs that
+     * grow during a search.
+     *
+     * @param capacity Number of nodes the graph has grown to
+     */
+    void grow(int capacity) {
+        if (capacity <= mPositions.length) {
+            return;
+        }
+        int oldCapacity = mPositions.length;
+        mHeap = Arrays.copyOf(mHeap, capacity);
+        mPositions = Arrays.copyOf(mPositions, capacity);
+        mPriorities = Arrays.copyOf(mPriorities, capacity);
+        mOrder = Arrays.copyOf(mOrder, capacity);
+        Arrays.fill(mPositions, oldCapacity, capacity, -1);
+    }
+
+    /**
+     * Remove all queued nodes. This only costs as much as the number of nodes still queued.
+     */
+    void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mPositions[mHeap[i]] = -1;
+        }
+        mSize = 0;
+        mNextOrder = 0;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean contains(int node) {
+        return mPositions[node] >= 0;
+    }
+
+    /**
+     * Priority the node is currently queued with. Only meaningful while the node is queued.
+     */
+    long priority(int node) {
+        return mPriorities[node];
+    }
+
+    /**
+     * Queue a node that is not already in the heap.
+     *
+     * @param node     Node to queue
+     * @param priority Priority of the node, smaller is polled first
+     */
+    void add(int node, long priority) {
+        mHeap[mSize] = node;
+        mPositions[node] = mSize;
+        mPriorities[node] = priority;
+        mOrder[node] = mNextOrder++;
+        siftUp(mSize++);
+    }
+
+    /**
+     * Change the priority of a queued node. The node keeps its original insertion order for tie breaking.
+     *
+     * @param node     Queued node to update
+     * @param priority New priority of the node
+     */
+    void update(int node, long priority) {
+        long old = mPriorities[node];
+        mPriorities[node] = priority;
+        if (priority < old) {
+            siftUp(mPositions[node]);
+        } else if (priority > old) {
+            siftDown(mPositions[node]);
+        }
+    }
+
+    /**
+     * Queue the node, or update its priority if it is already queued.
+     */
+    void addOrUpdate(int node, long priority) {
+        if (contains(node)) {
+            update(node, priority);
+        } else {
+            add(node, priority);
+        }
+    }
+
+    /**
+     * @return Node with the smallest priority without removing it
+     */
+    int peek() {
+        return mHeap[0];
+    }
+
+    /**
+     * Remove and return the node with the smallest priority.
+     *
+     * @return Node with the smallest priority
+     */
+    int poll() {
+        int top = mHeap[0];
+        mPositions[top] = -1;
+        mSize--;
+        if (mSize > 0) {
+            mHeap[0] = mHeap[mSize];
+            mPositions[mHeap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Remove a queued node from anywhere in the heap.
+     *
+     * @param node Queued node to remove
+     */
+    void remove(int node) {
+        int slot = mPositions[node];
+        mPositions[node] = -1;
+        mSize--;
+        if (slot == mSize) {
+            return;
+        }
+        int moved = mHeap[mSize];
+        mHeap[slot] = moved;
+        mPositions[moved] = slot;
+        siftUp(slot);
+        if (mPositions[moved] == slot) {
+            siftDown(slot);
+        }
+    }
+
+    private boolean less(int nodeA, int nodeB) {
+        long a = mPriorities[nodeA];
+        long b = mPriorities[nodeB];
+        return a < b || (a == b && mOrder[nodeA] < mOrder[nodeB]);
+    }
+
+    private void siftUp(int slot) {
+        int node = mHeap[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!less(node, mHeap[parent])) {
+                break;
+            }
+            mHeap[slot] = mHeap[parent];
+            mPositions[mHeap[slot]] = slot;
+            slot = parent;
+        }
+        mHeap[slot] = node;
+        mPositions[node] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int node = mHeap[slot];
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= mSize) {
+                break;
+            }
+            if (child + 1 < mSize && less(mHeap[child + 1], mHeap[child])) {
+                child++;
+            }
+            if (!less(mHeap[child], node)) {
+                break;
+            }
+            mHeap[slot] = mHeap[child];
+            mPositions[mHeap[slot]] = slot;
+            slot = child;
+        }
+        mHeap[slot] = node;
+        mPositions[node] = slot;
+    }
+}
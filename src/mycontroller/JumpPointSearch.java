@@ -0,0 +1,298 @@
+package mycontroller;
+
+import tiles.MapTile;
+import utilities.Coordinate;
+
+import java.util.*;
+
+/**
+ * Jump Point Search for reaching keys, health and exits.
+ *
+ * In open regions of plain road every tile costs the same, so A* wastes most of its expansions on the many equally
+ * good routes between two points. JPS instead jumps in straight lines and only stops at tiles where a turn may be
+ * needed, the goal, or tiles next to unexplored tiles or traps. Those tiles cost more than road, so jumping is not
+ * safe near them and the search falls back to expanding nodes one tile at a time, using the same costs as AStarSearch.
+ *
+ * This is the 4-connected form of JPS: horizontal jumps stop at forced neighbours, vertical jumps stop wherever a
+ * horizontal jump from them would find a jump point. Where every jump from every tile ends only depends on the map,
+ * apart from stopping at the goal, so it is worked out once per version of the map rather than scanned for again on
+ * each jump.
+ */
+public class JumpPointSearch extends AStarSearch {
+    private static final int EAST = 0;
+    private static final int WEST = 1;
+    private static final int NORTH = 2;
+    private static final int SOUTH = 3;
+
+    private final int[] mNeighbours = new int[4];
+    private HashMap<Coordinate, MapTile> mMap;
+    private SearchWorkspace mWorkspace;
+    private int mGoalNode;
+    /**
+     * Jump from each node in each direction, ignoring the goal: the number of tiles to the jump point, or the
+     * complement of the number of road tiles before the jump runs into something else
+     */
+    private int[][] mJumps = new int[4][0];
+    /**
+     * Map and version of the map the jumps were worked out for
+     */
+    private HashMap<Coordinate, MapTile> mJumpsMap;
+    private int mJumpsMapSize;
+    private int mJumpsMapVersion;
+
+    /**
+     * Run a jump point search between two points
+     *
+     * @param map   Map we're navigating on
+     * @param start Coordinate to start search from
+     * @param goal  Coordinate to end search on
+     * @return List of coordinates to get from start to goal
+     */
+    @Override
+    protected List<Coordinate> search(HashMap<Coordinate, MapTile> map, Coordinate start, Coordinate goal,
+                                      Set<Integer> keysCollected) {
+        SearchWorkspace workspace = beginSearch(map);
+        // Evaluated nodes
+        BitSet closedSet = workspace.getClosedSet();
+        // Discovered but unevaluated nodes, ordered by fScore
+        IndexedMinHeap openSet = workspace.getOpenSet();
+        mMap = map;
+        mWorkspace = workspace;
+        prepareJumps();
+
+        List<Coordinate> path = new ArrayList<>();
+        int startNode = workspace.index(start);
+        if (startNode < 0) {
+            return path;
+        }
+        mGoalNode = workspace.index(goal);
+        workspace.setGScore(startNode, 0);
+        openSet.add(startNode, heuristicCost(start, goal));
+
+        while (!openSet.isEmpty() && !isCancelled()) {
+            int current = openSet.poll();
+            nodeExpanded();
+            if (current == mGoalNode) {
+                path = fillPath(workspace.reconstructPath(current));
+                break;
+            }
+
+            closedSet.set(current);
+
+            if (isRoad(current) && !nextToCostlyTile(current)) {
+                jumpFrom(current, 1, 0, goal);
+                jumpFrom(current, -1, 0, goal);
+                jumpFrom(current, 0, 1, goal);
+                jumpFrom(current, 0, -1, goal);
+            } else {
+                // Costs vary around here, so expand tile by tile
+                int neighbourCount = workspace.neighbours(current, map, mNeighbours);
+                for (int i = 0; i < neighbourCount; i++) {
+                    int neighbour = mNeighbours[i];
+                    relax(current, neighbour, moveCost(map.get(workspace.coordinate(neighbour)), keysCollected), goal);
+                }
+            }
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private void jumpFrom(int node, int dx, int dy, Coordinate goal) {
+        int jumpPoint = jump(node, dx, dy);
+        if (jumpPoint >= 0) {
+            // Every tile jumped over is road, which costs 1
+            relax(node, jumpPoint, heuristicCost(mWorkspace.coordinate(node), mWorkspace.coordinate(jumpPoint)), goal);
+        }
+    }
+
+    private void relax(int current, int neighbour, int cost, Coordinate goal) {
+        if (mWorkspace.getClosedSet().get(neighbour)) {
+            return;
+        }
+        IndexedMinHeap openSet = mWorkspace.getOpenSet();
+        int tentativeGScore = mWorkspace.getGScore(current) + cost;
+        if (openSet.contains(neighbour) && tentativeGScore >= mWorkspace.getGScore(neighbour)) {
+            return;
+        }
+        mWorkspace.setCameFrom(neighbour, current);
+        mWorkspace.setGScore(neighbour, tentativeGScore);
+        openSet.addOrUpdate(neighbour, tentativeGScore + heuristicCost(mWorkspace.coordinate(neighbour), goal));
+    }
+
+    /**
+     * Move from a node in a straight line until reaching a jump point.
+     *
+     * @param node Node to jump from, which is not itself checked
+     * @param dx   Horizontal direction of the jump
+     * @param dy   Vertical direction of the jump
+     * @return The jump point found, or -1 if the jump runs into something other than road first
+     */
+    private int jump(int node, int dx, int dy) {
+        int width = mWorkspace.getWidth();
+        int jump = mJumps[direction(dx, dy)][node];
+        int length = jump >= 0 ? jump : ~jump;
+        // The goal is a jump point too, if the jump gets as far as it
+        if (dy == 0) {
+            if (reachesGoal(node, dx)) {
+                return mGoalNode;
+            }
+        } else {
+            int steps = (mGoalNode / width - node / width) * dy;
+            if (steps >= 1 && steps <= length) {
+                int onGoalRow = node + steps * dy * width;
+                if (onGoalRow == mGoalNode || reachesGoal(onGoalRow, 1) || reachesGoal(onGoalRow, -1)) {
+                    return onGoalRow;
+                }
+            }
+        }
+        return jump >= 0 ? node + length * (dx + dy * width) : -1;
+    }
+
+    /**
+     * Check if a horizontal jump from a node would get as far as the goal.
+     */
+    private boolean reachesGoal(int node, int dx) {
+        int width = mWorkspace.getWidth();
+        if (mGoalNode / width != node / width) {
+            return false;
+        }
+        int steps = (mGoalNode - node) * dx;
+        int jump = mJumps[direction(dx, 0)][node];
+        return steps >= 1 && steps <= (jump >= 0 ? jump : ~jump);
+    }
+
+    /**
+     * Work out the jumps from every node in every direction, unless they are already worked out for this version of
+     * the map. Each is found from the jump one tile on in the same direction, so each row and column is scanned once
+     * per direction. Vertical jumps stop where horizontal ones find a jump point, so horizontal jumps come first.
+     */
+    private void prepareJumps() {
+        if (mJumpsMap == mMap && mJumpsMapSize == mMap.size() && mJumpsMapVersion == getMapVersion() &&
+                mJumps[EAST].length == mWorkspace.size()) {
+            return;
+        }
+        mJumpsMap = mMap;
+        mJumpsMapSize = mMap.size();
+        mJumpsMapVersion = getMapVersion();
+        int width = mWorkspace.getWidth();
+        int height = mWorkspace.getHeight();
+        if (mJumps[EAST].length != mWorkspace.size()) {
+            mJumps = new int[4][mWorkspace.size()];
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = width - 1; x >= 0; x--) {
+                prepareJump(y * width + x, 1, 0);
+            }
+            for (int x = 0; x < width; x++) {
+                prepareJump(y * width + x, -1, 0);
+            }
+        }
+        for (int x = 0; x < width; x++) {
+            for (int y = height - 1; y >= 0; y--) {
+                prepareJump(y * width + x, 0, 1);
+            }
+            for (int y = 0; y < height; y++) {
+                prepareJump(y * width + x, 0, -1);
+            }
+        }
+    }
+
+    /**
+     * Work out the jump from a node, given the jump from the next node in the same direction.
+     */
+    private void prepareJump(int node, int dx, int dy) {
+        int[] jumps = mJumps[direction(dx, dy)];
+        int next = step(node, dx, dy);
+        if (next < 0 || !isRoad(next)) {
+            jumps[node] = ~0;
+        } else if (nextToCostlyTile(next) || (dy == 0
+                ? hasForcedNeighbour(next, dx, 1) || hasForcedNeighbour(next, dx, -1)
+                : mJumps[EAST][next] >= 0 || mJumps[WEST][next] >= 0)) {
+            jumps[node] = 1;
+        } else {
+            jumps[node] = jumps[next] >= 0 ? jumps[next] + 1 : jumps[next] - 1;
+        }
+    }
+
+    private static int direction(int dx, int dy) {
+        if (dy == 0) {
+            return dx > 0 ? EAST : WEST;
+        }
+        return dy > 0 ? NORTH : SOUTH;
+    }
+
+    /**
+     * A node moving horizontally has a forced neighbour to one side if that side is open but was blocked for the node
+     * it came from, as the only shortest way to get there may be to turn here.
+     */
+    private boolean hasForcedNeighbour(int node, int dx, int side) {
+        int open = step(node, 0, side);
+        if (open < 0 || !isRoad(open)) {
+            return false;
+        }
+        int behind = step(step(node, -dx, 0), 0, side);
+        return behind < 0 || !isRoad(behind);
+    }
+
+    /**
+     * Node one tile away in the given direction, or -1 if that is off the grid.
+     */
+    private int step(int node, int dx, int dy) {
+        if (node < 0) {
+            return -1;
+        }
+        int width = mWorkspace.getWidth();
+        int x = node % width + dx;
+        int y = node / width + dy;
+        if (x < 0 || y < 0 || x >= width || y >= mWorkspace.getHeight()) {
+            return -1;
+        }
+        return y * width + x;
+    }
+
+    /**
+     * Check if a node is plain road, i.e. something that can be jumped over at a cost of 1 per tile.
+     */
+    private boolean isRoad(int node) {
+        MapTile tile = mMap.get(mWorkspace.coordinate(node));
+        return tile != null && (tile.isType(MapTile.Type.ROAD) || tile.isType(MapTile.Type.START) ||
+                tile.isType(MapTile.Type.FINISH));
+    }
+
+    /**
+     * Check if any neighbour of a node can be driven on but costs something other than road.
+     */
+    private boolean nextToCostlyTile(int node) {
+        return isCostly(step(node, 1, 0)) || isCostly(step(node, -1, 0)) ||
+                isCostly(step(node, 0, 1)) || isCostly(step(node, 0, -1));
+    }
+
+    private boolean isCostly(int node) {
+        return node >= 0 && !isRoad(node) && SearchWorkspace.isPassable(mMap.get(mWorkspace.coordinate(node)));
+    }
+
+    /**
+     * Fill in the tiles jumped over between consecutive jump points.
+     *
+     * @param jumpPoints Jump points from the goal back to the start
+     * @return Every tile from the goal back to the start
+     */
+    private List<Coordinate> fillPath(List<Coordinate> jumpPoints) {
+        List<Coordinate> path = new ArrayList<>();
+        for (int i = 0; i < jumpPoints.size(); i++) {
+            Coordinate to = jumpPoints.get(i);
+            path.add(to);
+            if (i + 1 < jumpPoints.size()) {
+                Coordinate from = jumpPoints.get(i + 1);
+                int dx = Integer.signum(from.x - to.x);
+                int dy = Integer.signum(from.y - to.y);
+                int node = mWorkspace.index(to);
+                for (int k = 1; k < manhattanDistance(to, from); k++) {
+                    node = step(node, dx, dy);
+                    path.add(mWorkspace.coordinate(node));
+                }
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,366 @@
+package mycontroller;
+
+import tiles.LavaTrap;
+import tiles.MapTile;
+import utilities.Coordinate;
+
+import java.util.*;
+
+/**
+ * Chooses which key to collect next by planning the whole tour through every known key and on to an exit.
+ *
+ * Driving distances between keys, and from each key to its nearest exit, are found with one Dijkstra flood per key.
+ * The best order to visit them in is then solved exactly with the Held-Karp dynamic program over the set of keys
+ * collected so far. Neither depends on where the car is, so both are kept until the known map, the keys or the
+ * exits change. Each call then only needs one flood from the car to the keys. Most map changes only reveal tiles
+ * that no shortest path between the keys goes through, so when the floods give the same distances as before the
+ * dynamic program, which dominates at 16 keys, is not run again.
+ *
+ * When the search has a time budget, working out a new tour stops at the search's deadline and carries on in the
+ * next call. Until it is done the last tour is used, which may be a few map versions old, or if the keys have changed
+ * since there is no tour and the caller falls back to the nearest key. The flood from the car always runs in full.
+ */
+class KeyTourPlanner {
+    /**
+     * Most distinct keys the tour is planned for. The dynamic program is O(2^keys * tiles^2).
+     */
+    static final int MAX_KEYS = 16;
+    /**
+     * Most key tiles the tour is planned for, as a key may appear on more than one tile.
+     */
+    static final int MAX_KEY_TILES = 32;
+    private static final int INFINITY = Integer.MAX_VALUE / 4;
+    /**
+     * Sets of keys the dynamic program fills in between looks at the clock
+     */
+    private static final int CLOCK_INTERVAL = 64;
+
+    private final AStarSearch mSearch;
+    private final SearchWorkspace mWorkspace = new SearchWorkspace();
+    private final int[] mNeighbours = new int[4];
+    /**
+     * Cost of driving onto each node, or -1 where the car can't drive, so the floods don't look tiles up in the map
+     */
+    private int[] mStepCosts = new int[0];
+    private HashMap<Coordinate, MapTile> mStepCostsMap;
+    private int mStepCostsVersion = -1;
+    private Set<Integer> mStepCostsKeys = new HashSet<>();
+
+    // What the tour in use was computed for
+    private int mMapVersion = -1;
+    private List<Coordinate> mKeyTiles = new ArrayList<>();
+    private List<Coordinate> mExits = new ArrayList<>();
+    private Set<Integer> mKeysCollected = new HashSet<>();
+
+    /**
+     * Bit of each key tile's key in the set of collected keys
+     */
+    private int[] mKeyBits = new int[0];
+    /**
+     * Distances the tour was solved for, from each key tile to every key tile and then every exit
+     */
+    private int[][] mDistances = new int[0][];
+    /**
+     * mCostToGo[keys][i] is the cheapest way to collect every key not in the set keys and reach an exit, starting
+     * from key tile i. Swapped with mPlanCostToGo when a new tour is solved, and only reallocated when a tour needs
+     * more room.
+     */
+    private int[][] mCostToGo = new int[0][];
+
+    // The tour being worked out, which may take more than one call
+    private boolean mPlanning;
+    private int mPlanVersion;
+    private List<Coordinate> mPlanKeyTiles;
+    private List<Coordinate> mPlanExits;
+    private Set<Integer> mPlanKeysCollected;
+    private List<Coordinate> mPlanTargets;
+    private int[] mPlanKeyBits;
+    private int mPlanAllKeys;
+    private int[][] mPlanDistances;
+    /**
+     * Number of key tiles flooded from so far
+     */
+    private int mPlanFloods;
+    /**
+     * Next set of keys the dynamic program fills in, counting down, or -1 before it has started
+     */
+    private int mPlanCollected;
+    private int[][] mPlanCostToGo = new int[0][];
+
+    /**
+     * @param search Search whose tile costs are used to measure distances, and whose deadline planning stops at
+     */
+    KeyTourPlanner(AStarSearch search) {
+        mSearch = search;
+    }
+
+    /**
+     * Choose the key tile to drive to next.
+     *
+     * @param map           Map we're navigating on
+     * @param mapVersion    Version of the map, which changes whenever the known map does
+     * @param position      Car's position
+     * @param keyTiles      Tiles of the keys still to be collected
+     * @param exits         Known exits
+     * @param keysCollected Keys the car already has
+     * @return Key tile that starts the cheapest tour through the keys the car can reach, or null if the goals are not
+     * all uncollected keys, there are too many of them, no tour can be completed or the tour isn't worked out yet
+     */
+    Coordinate nextKey(HashMap<Coordinate, MapTile> map, int mapVersion, Coordinate position,
+                       List<Coordinate> keyTiles, List<Coordinate> exits, Set<Integer> keysCollected) {
+        if (keyTiles.isEmpty() || keyTiles.size() > MAX_KEY_TILES) {
+            return null;
+        }
+        updateStepCosts(map, mapVersion, keysCollected);
+        // Keys the car can't get to can't be part of the tour
+        int[] fromCar = distancesFrom(position, keyTiles);
+        List<Coordinate> reachableTiles = new ArrayList<>();
+        List<Integer> reachableDistances = new ArrayList<>();
+        for (int i = 0; i < keyTiles.size(); i++) {
+            if (fromCar[i] < INFINITY) {
+                reachableTiles.add(keyTiles.get(i));
+                reachableDistances.add(fromCar[i]);
+            }
+        }
+        if (reachableTiles.isEmpty()) {
+            return null;
+        }
+
+        if (mapVersion != mMapVersion || !reachableTiles.equals(mKeyTiles) || !exits.equals(mExits) ||
+                !keysCollected.equals(mKeysCollected)) {
+            // Keep working on the tour being planned through map changes, but not through changes to the goals
+            if (!mPlanning || !reachableTiles.equals(mPlanKeyTiles) || !exits.equals(mPlanExits) ||
+                    !keysCollected.equals(mPlanKeysCollected)) {
+                if (!startTour(map, mapVersion, reachableTiles, exits, keysCollected)) {
+                    return null;
+                }
+            }
+            continueTour();
+            if (!reachableTiles.equals(mKeyTiles) || !keysCollected.equals(mKeysCollected)) {
+                // The tour in use is for other keys
+                return null;
+            }
+        }
+
+        Coordinate best = null;
+        int bestCost = INFINITY;
+        for (int i = 0; i < reachableTiles.size(); i++) {
+            int cost = reachableDistances.get(i) + mCostToGo[mKeyBits[i]][i];
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = reachableTiles.get(i);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Start working out the tour for the given keys.
+     *
+     * @return False if the goals are not keys that can be planned for
+     */
+    private boolean startTour(HashMap<Coordinate, MapTile> map, int mapVersion, List<Coordinate> keyTiles,
+                              List<Coordinate> exits, Set<Integer> keysCollected) {
+        mPlanning = false;
+        // Give each distinct key a bit
+        List<Integer> keys = new ArrayList<>();
+        int tiles = keyTiles.size();
+        int[] keyBits = new int[tiles];
+        for (int i = 0; i < tiles; i++) {
+            MapTile tile = map.get(keyTiles.get(i));
+            if (!(tile instanceof LavaTrap) || ((LavaTrap) tile).getKey() <= 0 ||
+                    keysCollected.contains(((LavaTrap) tile).getKey())) {
+                return false;
+            }
+            int key = ((LavaTrap) tile).getKey();
+            if (!keys.contains(key)) {
+                keys.add(key);
+            }
+            keyBits[i] = 1 << keys.indexOf(key);
+        }
+        if (keys.size() > MAX_KEYS) {
+            return false;
+        }
+
+        mPlanning = true;
+        mPlanVersion = mapVersion;
+        mPlanKeyTiles = keyTiles;
+        mPlanExits = new ArrayList<>(exits);
+        mPlanKeysCollected = new HashSet<>(keysCollected);
+        mPlanTargets = new ArrayList<>(keyTiles);
+        mPlanTargets.addAll(exits);
+        mPlanKeyBits = keyBits;
+        mPlanAllKeys = (1 << keys.size()) - 1;
+        mPlanDistances = new int[tiles][];
+        mPlanFloods = 0;
+        mPlanCollected = -1;
+        return true;
+    }
+
+    /**
+     * Carry on working out the tour until it is done or the search's deadline has passed, always making some
+     * progress. Once done it replaces the tour in use.
+     */
+    private void continueTour() {
+        int tiles = mPlanKeyTiles.size();
+        // Distances from every key tile to every other key tile and the exits
+        while (mPlanFloods < tiles) {
+            mPlanDistances[mPlanFloods] = distancesFrom(mPlanKeyTiles.get(mPlanFloods), mPlanTargets);
+            mPlanFloods++;
+            if (mPlanFloods < tiles && pastDeadline()) {
+                return;
+            }
+        }
+
+        if (mPlanCollected < 0) {
+            if (Arrays.equals(mPlanKeyBits, mKeyBits) && Arrays.deepEquals(mPlanDistances, mDistances)) {
+                // The tour in use is still the best, it only needs to know what it now holds for
+                finishTour();
+                return;
+            }
+            if (mPlanCostToGo.length <= mPlanAllKeys || mPlanCostToGo[0].length < tiles) {
+                mPlanCostToGo = new int[mPlanAllKeys + 1][tiles];
+            }
+            for (int i = 0; i < tiles; i++) {
+                int toExit = mPlanExits.isEmpty() ? 0 : INFINITY;
+                for (int e = 0; e < mPlanExits.size(); e++) {
+                    toExit = Math.min(toExit, mPlanDistances[i][tiles + e]);
+                }
+                mPlanCostToGo[mPlanAllKeys][i] = toExit;
+            }
+            mPlanCollected = mPlanAllKeys - 1;
+        }
+        while (mPlanCollected > 0) {
+            int collected = mPlanCollected--;
+            for (int i = 0; i < tiles; i++) {
+                if ((collected & mPlanKeyBits[i]) == 0) {
+                    continue;
+                }
+                int best = INFINITY;
+                for (int j = 0; j < tiles; j++) {
+                    if ((collected & mPlanKeyBits[j]) != 0 || mPlanDistances[i][j] >= INFINITY) {
+                        continue;
+                    }
+                    best = Math.min(best, mPlanDistances[i][j] + mPlanCostToGo[collected | mPlanKeyBits[j]][j]);
+                }
+                mPlanCostToGo[collected][i] = best;
+            }
+            if (mPlanCollected % CLOCK_INTERVAL == 0 && mPlanCollected > 0 && pastDeadline()) {
+                return;
+            }
+        }
+        int[][] costToGo = mCostToGo;
+        mCostToGo = mPlanCostToGo;
+        mPlanCostToGo = costToGo;
+        finishTour();
+    }
+
+    /**
+     * Make the tour that has been worked out the one in use.
+     */
+    private void finishTour() {
+        mPlanning = false;
+        mMapVersion = mPlanVersion;
+        mKeyTiles = mPlanKeyTiles;
+        mExits = mPlanExits;
+        mKeysCollected = mPlanKeysCollected;
+        mKeyBits = mPlanKeyBits;
+        mDistances = mPlanDistances;
+    }
+
+    /**
+     * Check if the search this planner works for has a time budget and has run past its deadline.
+     */
+    private boolean pastDeadline() {
+        return mSearch.getTimeBudget() > 0 && System.nanoTime() - mSearch.getDeadline() > 0;
+    }
+
+    /**
+     * Work out the cost of driving onto each tile, unless they are already known for this map version and keys.
+     */
+    private void updateStepCosts(HashMap<Coordinate, MapTile> map, int mapVersion, Set<Integer> keysCollected) {
+        mWorkspace.begin(map);
+        if (map == mStepCostsMap && mapVersion == mStepCostsVersion && keysCollected.equals(mStepCostsKeys) &&
+                mStepCosts.length == mWorkspace.size()) {
+            return;
+        }
+        if (mStepCosts.length != mWorkspace.size()) {
+            mStepCosts = new int[mWorkspace.size()];
+        }
+        for (int node = 0; node < mStepCosts.length; node++) {
+            MapTile tile = map.get(mWorkspace.coordinate(node));
+            mStepCosts[node] = SearchWorkspace.isPassable(tile) ? mSearch.stepCost(tile, keysCollected) : -1;
+        }
+        mStepCostsMap = map;
+        mStepCostsVersion = mapVersion;
+        mStepCostsKeys = new HashSet<>(keysCollected);
+    }
+
+    /**
+     * Dijkstra flood from a source over the step costs, stopping once every target has been reached.
+     *
+     * @return Distance to each target, or INFINITY for targets that cannot be reached
+     */
+    private int[] distancesFrom(Coordinate source, List<Coordinate> targets) {
+        int[] distances = new int[targets.size()];
+        Arrays.fill(distances, INFINITY);
+        mWorkspace.begin(mStepCostsMap);
+        int sourceNode = mWorkspace.index(source);
+        if (sourceNode < 0) {
+            return distances;
+        }
+        BitSet goalSet = mWorkspace.getGoalSet();
+        for (Coordinate target : targets) {
+            int node = mWorkspace.index(target);
+            if (node >= 0) {
+                goalSet.set(node);
+            }
+        }
+        int remaining = goalSet.cardinality();
+
+        BitSet closedSet = mWorkspace.getClosedSet();
+        IndexedMinHeap openSet = mWorkspace.getOpenSet();
+        int width = mWorkspace.getWidth();
+        mWorkspace.setGScore(sourceNode, 0);
+        openSet.add(sourceNode, 0);
+        while (!openSet.isEmpty() && remaining > 0) {
+            int current = openSet.poll();
+            closedSet.set(current);
+            if (goalSet.get(current)) {
+                remaining--;
+            }
+            int x = current % width;
+            int neighbourCount = 0;
+            if (x + 1 < width) {
+                mNeighbours[neighbourCount++] = current + 1;
+            }
+            if (x > 0) {
+                mNeighbours[neighbourCount++] = current - 1;
+            }
+            if (current + width < mStepCosts.length) {
+                mNeighbours[neighbourCount++] = current + width;
+            }
+            if (current >= width) {
+                mNeighbours[neighbourCount++] = current - width;
+            }
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = mNeighbours[i];
+                if (mStepCosts[neighbour] < 0 || closedSet.get(neighbour)) {
+                    continue;
+                }
+                int tentativeGScore = mWorkspace.getGScore(current) + mStepCosts[neighbour];
+                if (tentativeGScore < mWorkspace.getGScore(neighbour)) {
+                    mWorkspace.setGScore(neighbour, tentativeGScore);
+                    openSet.addOrUpdate(neighbour, tentativeGScore);
+                }
+            }
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            int node = mWorkspace.index(targets.get(i));
+            if (node >= 0 && closedSet.get(node)) {
+                distances[i] = mWorkspace.getGScore(node);
+            }
+        }
+        return distances;
+    }
+}
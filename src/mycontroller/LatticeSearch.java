@@ -0,0 +1,465 @@
+package mycontroller;
+
+import tiles.HealthTrap;
+import tiles.LavaTrap;
+import tiles.MapTile;
+import tiles.MudTrap;
+import tiles.TrapTile;
+import utilities.Coordinate;
+import world.WorldSpatial;
+
+import java.util.*;
+
+import static mycontroller.RelativeDirection.*;
+
+/**
+ * State lattice planner for reaching keys, health and exits.
+ *
+ * The other strategies find a tile path and convert it to directions afterwards, which doesn't account for how the car
+ * actually moves: it can't turn while stopped or on grass, and changing between forwards and reverse takes a tick at
+ * standstill. Here each search state is the car's tile, orientation and velocity, and each edge is one update of the
+ * car under one of the directions, simulated with the same rules as Car.update() and the same controls as
+ * MyAIController.update(). The plan is therefore one direction per update and can be followed as it is.
+ *
+ * The cost of a plan is the number of updates it takes, plus the same penalties as AStarSearch.stepCost() for each
+ * unexplored tile or trap driven onto, and for each update spent stopped on a trap other than health. The heuristic is
+ * the cost of the cheapest tile path to the goal, found by a flood out from the goal before each plan.
+ *
+ * Of what AStarSearch.startSearch() wraps its searches in, plans keep the goal choice, the time budget and
+ * cancelling, which leaves no plan. They skip the path cache and the thrash history. A plan only holds from the car's
+ * exact orientation and velocity as well as its tile, and the controller never asks for the same plan twice on one
+ * version of the map, so cached plans would not be reused. Following a past plan from a different state, as the thrash
+ * history does, would not drive the route it was made for. getPathCacheHits() and getPathCacheMisses() stay at 0.
+ */
+public class LatticeSearch extends AStarSearch {
+    /**
+     * Velocity limits, the same as the car's
+     */
+    private static final int MAX_FORWARD = 1;
+    private static final int MAX_BACKWARD = -1;
+    private static final int VELOCITIES = MAX_FORWARD - MAX_BACKWARD + 1;
+    private static final WorldSpatial.Direction[] ORIENTATIONS = WorldSpatial.Direction.values();
+    private static final int STATES_PER_TILE = ORIENTATIONS.length * VELOCITIES;
+    private static final RelativeDirection[] ACTIONS = {FORWARD, BACKWARD, LEFT, RIGHT};
+    /**
+     * Extra cost of an update spent stopped on a trap that does damage
+     */
+    private static final int STOPPED_ON_TRAP = 10;
+    private static final int NO_PARENT = -1;
+    /**
+     * Expansions between looks at the clock while there is a time budget
+     */
+    private static final int CLOCK_INTERVAL = 16;
+
+    /**
+     * Grid indexing for the map being planned on
+     */
+    private final SearchWorkspace mGrid = new SearchWorkspace();
+    private final IndexedMinHeap mOpenSet = new IndexedMinHeap();
+    private final int[] mNeighbours = new int[4];
+    private int[] mGScore = new int[0];
+    private int[] mCameFrom = new int[0];
+    private byte[] mAction = new byte[0];
+    private int[] mStamps = new int[0];
+    private int mGeneration;
+
+    private List<RelativeDirection> mDirections = new ArrayList<>();
+    private List<Coordinate> mPath = new ArrayList<>();
+
+    private HashMap<Coordinate, MapTile> mMap;
+    private Set<Integer> mKeysCollected;
+    /**
+     * Tiles the plan may use, or null for any
+     */
+    private BitSet mCorridor;
+    /**
+     * Cost of the last simulated update
+     */
+    private int mUpdateCost;
+
+    @Override
+    public void startSearch(HashMap<Coordinate, MapTile> map, WorldSpatial.Direction initialOrientation,
+                            Coordinate initialPos, List<Coordinate> intermediateGoals,
+                            List<Coordinate> finalGoals, Set<Integer> keysCollected) {
+        mDirections = new ArrayList<>();
+        mPath = new ArrayList<>();
+        startBudget();
+        Coordinate goal = chooseGoal(map, initialPos, intermediateGoals, finalGoals, keysCollected);
+        if (goal != null) {
+            plan(map, initialPos, initialOrientation, getInitialVelocity(), goal, keysCollected);
+        }
+        endBudget();
+    }
+
+    /**
+     * Plan how to drive along a route found by a search that doesn't follow the car's motion rules. The plan keeps to
+     * the route and the tiles beside it other than lava, which leaves room to get moving before turning onto the route.
+     *
+     * @param map                Map we're navigating on
+     * @param initialOrientation Car's orientation
+     * @param initialPos         Car's position, the start of the route
+     * @param route              Tiles to drive along, ending on the goal
+     * @param keysCollected      Keys the car already has
+     */
+    public void startSearchAlong(HashMap<Coordinate, MapTile> map, WorldSpatial.Direction initialOrientation,
+                                 Coordinate initialPos, List<Coordinate> route, Set<Integer> keysCollected) {
+        mDirections = new ArrayList<>();
+        mPath = new ArrayList<>();
+        if (route.isEmpty()) {
+            return;
+        }
+        mGrid.begin(map);
+        BitSet corridor = new BitSet(mGrid.size());
+        int[] neighbours = new int[4];
+        for (Coordinate coordinate : route) {
+            int node = mGrid.index(coordinate);
+            if (node < 0) {
+                continue;
+            }
+            corridor.set(node);
+            int neighbourCount = mGrid.neighbours(node, map, neighbours);
+            for (int i = 0; i < neighbourCount; i++) {
+                // Keep off lava beside the route, so the plan does no more damage than the route
+                if (!(map.get(mGrid.coordinate(neighbours[i])) instanceof LavaTrap)) {
+                    corridor.set(neighbours[i]);
+                }
+            }
+        }
+        mCorridor = corridor;
+        startBudget();
+        try {
+            plan(map, initialPos, initialOrientation, getInitialVelocity(), route.get(route.size() - 1),
+                    keysCollected);
+        } finally {
+            mCorridor = null;
+            endBudget();
+        }
+    }
+
+    @Override
+    public boolean plansMotion() {
+        return true;
+    }
+
+    @Override
+    public List<RelativeDirection> getDirections() {
+        return mDirections;
+    }
+
+    /**
+     * @return The car's position after each update of the plan, starting with where it is now
+     */
+    @Override
+    public List<Coordinate> getPath() {
+        return mPath;
+    }
+
+    /**
+     * A* over car states from the car's current state to any state on the goal tile.
+     *
+     * With a time budget, the plan is cut short once the deadline has passed, ending on the state expanded so far
+     * that is cheapest to reach the goal from. As that is measured along the tiles rather than as the crow flies, it
+     * is never in a dead end, and the car follows the plan and plans again from where it ends up. The start itself is
+     * never the end of a plan, so a search that has found nowhere better carries on past the deadline.
+     */
+    private void plan(HashMap<Coordinate, MapTile> map, Coordinate start, WorldSpatial.Direction orientation,
+                      int velocity, Coordinate goal, Set<Integer> keysCollected) {
+        mMap = map;
+        mKeysCollected = keysCollected;
+        mGrid.begin(map);
+        int startNode = mGrid.index(start);
+        int goalNode = mGrid.index(goal);
+        if (startNode < 0 || goalNode < 0) {
+            return;
+        }
+        floodFrom(goalNode);
+        if (costToGoal(startNode) == SearchWorkspace.UNREACHED) {
+            return;
+        }
+        begin(mGrid.size() * STATES_PER_TILE);
+        velocity = Math.max(MAX_BACKWARD, Math.min(MAX_FORWARD, velocity));
+
+        int startState = state(startNode, orientation.ordinal(), velocity);
+        setGScore(startState, 0, NO_PARENT, -1);
+        mOpenSet.add(startState, costToGoal(startNode));
+        boolean budgeted = getTimeBudget() > 0;
+        int expanded = 0;
+        int best = startState;
+        while (!mOpenSet.isEmpty() && !isCancelled()) {
+            int current = mOpenSet.poll();
+            nodeExpanded();
+            if (current / STATES_PER_TILE == goalNode) {
+                reconstructPlan(current);
+                return;
+            }
+            if (budgeted) {
+                if (best == startState || closerToGoal(current, best)) {
+                    best = current;
+                }
+                if (++expanded % CLOCK_INTERVAL == 0 && best != startState &&
+                        System.nanoTime() - getDeadline() > 0) {
+                    reconstructPlan(best);
+                    return;
+                }
+            }
+            for (int a = 0; a < ACTIONS.length; a++) {
+                int next = simulate(current, ACTIONS[a]);
+                if (next < 0) {
+                    continue;
+                }
+                int toGo = costToGoal(next / STATES_PER_TILE);
+                int tentativeGScore = getGScore(current) + mUpdateCost;
+                if (toGo != SearchWorkspace.UNREACHED && tentativeGScore < getGScore(next)) {
+                    setGScore(next, tentativeGScore, current, a);
+                    mOpenSet.addOrUpdate(next, (long) tentativeGScore + toGo);
+                }
+            }
+        }
+    }
+
+    /**
+     * Simulate one update of the car under a direction, as MyAIController and Car would carry it out.
+     *
+     * @param state  State of the car before the update
+     * @param action Direction given for the update
+     * @return State of the car after the update, or -1 if it would hit a wall or drive somewhere it can't. The cost of
+     * the update is left in mUpdateCost.
+     */
+    private int simulate(int state, RelativeDirection action) {
+        int node = state / STATES_PER_TILE;
+        int orientation = state % STATES_PER_TILE / VELOCITIES;
+        int velocity = state % VELOCITIES + MAX_BACKWARD;
+        MapTile tile = mMap.get(mGrid.coordinate(node));
+        boolean onTrap = tile instanceof TrapTile;
+        orientation = steer(tile, ORIENTATIONS[orientation], velocity, action).ordinal();
+        velocity = accelerate(tile, velocity, action);
+
+        mUpdateCost = 1;
+        if (velocity == 0) {
+            if (onTrap && !(tile instanceof HealthTrap)) {
+                mUpdateCost += STOPPED_ON_TRAP;
+            }
+            return state(node, orientation, velocity);
+        }
+        WorldSpatial.Direction heading = velocity > 0
+                ? ORIENTATIONS[orientation] : WorldSpatial.reverseDirection(ORIENTATIONS[orientation]);
+        for (int i = 0; i < Math.abs(velocity); i++) {
+            node = step(node, heading);
+            if (node < 0) {
+                return -1;
+            }
+            MapTile next = mMap.get(mGrid.coordinate(node));
+            if (!SearchWorkspace.isPassable(next) || (mCorridor != null && !mCorridor.get(node))) {
+                return -1;
+            }
+            mUpdateCost += stepCost(next, mKeysCollected) - 1;
+        }
+        return state(node, orientation, velocity);
+    }
+
+    /**
+     * Find the cost of the cheapest tile path from every tile the plan may use to the goal, keeping them as the g
+     * scores of mGrid. No plan from a tile costs less, as at the car's top speed of one tile an update, each update
+     * that moves costs stepCost() of the tile it moves onto.
+     */
+    private void floodFrom(int goalNode) {
+        IndexedMinHeap openSet = mGrid.getOpenSet();
+        mGrid.setGScore(goalNode, 0);
+        openSet.add(goalNode, 0);
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            int cost = mGrid.getGScore(current) + stepCost(mMap.get(mGrid.coordinate(current)), mKeysCollected);
+            int neighbourCount = mGrid.neighbours(current, mMap, mNeighbours);
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = mNeighbours[i];
+                if ((mCorridor == null || mCorridor.get(neighbour)) && cost < mGrid.getGScore(neighbour)) {
+                    mGrid.setGScore(neighbour, cost);
+                    openSet.addOrUpdate(neighbour, cost);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Cost of the cheapest tile path from a tile to the goal, or UNREACHED if the plan can't get there from it
+     */
+    private int costToGoal(int node) {
+        return mGrid.getGScore(node);
+    }
+
+    /**
+     * Check if one state is cheaper to reach the goal from than another, or as cheap and cheaper to get to.
+     */
+    private boolean closerToGoal(int state, int other) {
+        int toGo = costToGoal(state / STATES_PER_TILE);
+        int otherToGo = costToGoal(other / STATES_PER_TILE);
+        return toGo < otherToGo || (toGo == otherToGo && getGScore(state) < getGScore(other));
+    }
+
+    /**
+     * Predict the car's state after one update under a direction, with the same rules plans are made with.
+     *
+     * @param map    Map the car is on
+     * @param car    Car's state before the update
+     * @param action Direction given for the update, or NONE if the car brakes
+     * @return Car's state after the update
+     */
+    static CarState predict(HashMap<Coordinate, MapTile> map, CarState car, RelativeDirection action) {
+        MapTile tile = map.get(car.position);
+        WorldSpatial.Direction orientation = steer(tile, car.orientation, car.velocity, action);
+        int velocity = accelerate(tile, car.velocity, action);
+        WorldSpatial.Direction heading = velocity > 0 ? orientation : WorldSpatial.reverseDirection(orientation);
+        Coordinate position = car.position;
+        for (int i = 0; i < Math.abs(velocity); i++) {
+            Coordinate next = step(position, heading);
+            MapTile nextTile = map.get(next);
+            if (nextTile == null || nextTile.isType(MapTile.Type.WALL)) {
+                // Bounces back at half speed, which rounds down to stopped
+                velocity /= -2;
+                break;
+            }
+            position = next;
+            if (nextTile instanceof MudTrap) {
+                velocity = 0;
+                break;
+            }
+        }
+        return new CarState(position, orientation, velocity);
+    }
+
+    /**
+     * Orientation after steering, following Car.applySteering(). Steering only happens while moving and not on a
+     * trap that stops it, and is mirrored while reversing.
+     */
+    private static WorldSpatial.Direction steer(MapTile tile, WorldSpatial.Direction orientation, int velocity,
+                                                RelativeDirection action) {
+        if ((action != LEFT && action != RIGHT) || velocity == 0 ||
+                (tile instanceof TrapTile && !((TrapTile) tile).canTurn())) {
+            return orientation;
+        }
+        WorldSpatial.RelativeDirection turn = action == LEFT
+                ? WorldSpatial.RelativeDirection.LEFT : WorldSpatial.RelativeDirection.RIGHT;
+        if (velocity < 0) {
+            turn = WorldSpatial.opposite(turn);
+        }
+        return WorldSpatial.changeDirection(orientation, turn);
+    }
+
+    /**
+     * Velocity after the acceleration a direction gives, with the controls MyAIController.update() uses for it.
+     * Turning keeps accelerating in the direction the car is already going, and NONE brakes as applyBrake() does.
+     */
+    private static int accelerate(MapTile tile, int velocity, RelativeDirection action) {
+        if (tile instanceof TrapTile && !((TrapTile) tile).canAccelerate()) {
+            return velocity;
+        }
+        if (action == NONE) {
+            return velocity == 0 ? 0 : accelerate(velocity, velocity < 0);
+        }
+        return accelerate(velocity, action == FORWARD || (action != BACKWARD && velocity >= 0));
+    }
+
+    /**
+     * Velocity after accelerating, following Car.applyAcceleration().
+     */
+    private static int accelerate(int velocity, boolean forwards) {
+        if (forwards) {
+            if (velocity < 0) {
+                return velocity + 1;
+            } else if (velocity == 0) {
+                return 1;
+            }
+            return Math.min(velocity * 2, MAX_FORWARD);
+        }
+        if (velocity > 0) {
+            return velocity - 1;
+        } else if (velocity == 0) {
+            return -1;
+        }
+        return Math.max(velocity * 2, MAX_BACKWARD);
+    }
+
+    /**
+     * Tile one step away in the given direction, or -1 if that is off the map.
+     */
+    private int step(int node, WorldSpatial.Direction direction) {
+        int width = mGrid.getWidth();
+        int x = node % width;
+        int y = node / width;
+        switch (direction) {
+            case EAST:
+                return x + 1 < width ? node + 1 : -1;
+            case WEST:
+                return x > 0 ? node - 1 : -1;
+            case NORTH:
+                return y + 1 < mGrid.getHeight() ? node + width : -1;
+            case SOUTH:
+                return y > 0 ? node - width : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Coordinate one step away in the given direction.
+     */
+    private static Coordinate step(Coordinate coordinate, WorldSpatial.Direction direction) {
+        switch (direction) {
+            case EAST:
+                return new Coordinate(coordinate.x + 1, coordinate.y);
+            case WEST:
+                return new Coordinate(coordinate.x - 1, coordinate.y);
+            case NORTH:
+                return new Coordinate(coordinate.x, coordinate.y + 1);
+            case SOUTH:
+                return new Coordinate(coordinate.x, coordinate.y - 1);
+        }
+        return coordinate;
+    }
+
+    private void reconstructPlan(int state) {
+        LinkedList<RelativeDirection> directions = new LinkedList<>();
+        LinkedList<Coordinate> path = new LinkedList<>();
+        path.addFirst(mGrid.coordinate(state / STATES_PER_TILE));
+        while (mCameFrom[state] != NO_PARENT) {
+            directions.addFirst(ACTIONS[mAction[state]]);
+            state = mCameFrom[state];
+            path.addFirst(mGrid.coordinate(state / STATES_PER_TILE));
+        }
+        mDirections = new ArrayList<>(directions);
+        mPath = new ArrayList<>(path);
+    }
+
+    private static int state(int node, int orientation, int velocity) {
+        return node * STATES_PER_TILE + orientation * VELOCITIES + velocity - MAX_BACKWARD;
+    }
+
+    /**
+     * Get the per state arrays ready for a new search, stamping rather than clearing them as SearchWorkspace does.
+     */
+    private void begin(int states) {
+        if (mGScore.length != states) {
+            mGScore = new int[states];
+            mCameFrom = new int[states];
+            mAction = new byte[states];
+            mStamps = new int[states];
+            mGeneration = 0;
+            mOpenSet.ensureCapacity(states);
+        }
+        mOpenSet.clear();
+        if (++mGeneration == 0) {
+            Arrays.fill(mStamps, 0);
+            mGeneration = 1;
+        }
+    }
+
+    private int getGScore(int state) {
+        return mStamps[state] == mGeneration ? mGScore[state] : SearchWorkspace.UNREACHED;
+    }
+
+    private void setGScore(int state, int score, int parent, int action) {
+        mStamps[state] = mGeneration;
+        mGScore[state] = score;
+        mCameFrom[state] = parent;
+        mAction[state] = (byte) action;
+    }
+}
@@ -3,20 +3,48 @@ package mycontroller;
 import tiles.HealthTrap;
 import tiles.LavaTrap;
 import tiles.MapTile;
+import tiles.TrapTile;
 import utilities.Coordinate;
 import world.Car;
+import world.CarView;
+import world.WorldSpatial;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 public class MyAIController extends WallFollowingAIController {
     /**
-     * Controller's knowledge ot the world
+     * Health the car should still have after reaching a goal while it is low on health
+     */
+    private static final int SAFE_HEALTH = 10;
+    /**
+     * Time a search may take each update, so that a slow search doesn't hold up the frame it runs in. Only the search
+     * for keys and exits is held to it, along with the key tour it plans except the tour's flood from the car.
+     * Exploring, routes to health and the rest of the update are outside it, so an update can take longer.
+     * HeadlessSimulation reports both the updates that do and the searches that overrun.
+     */
+    static final long SEARCH_TIME_BUDGET = TimeUnit.MILLISECONDS.toNanos(4);
+    /**
+     * Runs the searches for each decision side by side. There are at most three of them per decision: health, goals
+     * and exploring. Every controller in the process shares the pool, e.g. when a tournament runs several worlds at
+     * once, so it has a thread per processor.
+     */
+    private static final ForkJoinPool QUERY_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    /**
+     * Controller's knowledge ot the world. It holds an entry for every tile, so the controller needs heap in
+     * proportion to the map: about 3 GB for 4096x4096.
      */
     private HashMap<Coordinate, MapTile> mWorldMap;
+    /**
+     * Index of mWorldMap by the kinds of tile the controller looks for
+     */
+    private TileIndex mWorldIndex;
     /**
      * Path that we are following
      */
@@ -32,56 +60,173 @@ public class MyAIController extends WallFollowingAIController {
      * mExplorationStrategy is used when we need to explore more of the map.
      */
     private SearchStrategy mSearchStrategy, mExplorationStrategy;
+    /**
+     * Finds routes that leave the car enough health, used when health is low
+     */
+    private final ParetoSearch mRouteSearch = new ParetoSearch();
+    /**
+     * Runs the searches for a decision at once and picks the plan to follow
+     */
+    private StrategyPortfolio mPortfolio = new StrategyPortfolio(QUERY_POOL, StrategyPortfolio.PREFERENCE_ORDER);
+    /**
+     * Makes plans off the update thread when background planning is on, otherwise null
+     */
+    private BackgroundPlanner mPlanner;
+    /**
+     * Planning thread's own copy of the map, which only that thread may touch
+     */
+    private HashMap<Coordinate, MapTile> mPlannerMap;
+    private TileIndex mPlannerIndex;
+    /**
+     * Plans how the car drives along routes from strategies that don't follow its motion rules
+     */
+    private LatticeSearch mMotionPlanner;
+    /**
+     * Tiles that have changed since the planning thread was last given them
+     */
+    private final HashMap<Coordinate, MapTile> mPendingChanges = new HashMap<>();
+    /**
+     * Walls and damaging traps seen since the plan being made was requested, which it won't know to avoid
+     */
+    private final Set<Coordinate> mHazardsSinceRequest = new HashSet<>();
+    /**
+     * Whether a wall or damaging trap has been seen on the rest of the path the car is following
+     */
+    private boolean mPathBlocked;
+    /**
+     * Whether there is no plan from the planning thread that can be followed
+     */
+    private boolean mWaitingForPlan = true;
+    /**
+     * Directions of the plan the car is following still to come before the plan being made starts. That plan is only
+     * taken once the car gets there.
+     */
+    private int mUpdatesToPlanStart;
+    /**
+     * Whether the plan being made, or waiting to be taken, starts further along the plan the car is following
+     */
+    private boolean mPlannedAhead;
+    /**
+     * Updates the last plan took to make, one more than how far along the current plan the next one is started
+     */
+    private int mPlanLatency;
+    private int mUpdates;
+    private int mRequestedAt = -1;
+    /**
+     * Whether the plan the car is following keeps to its motion rules, so where it ends can be predicted
+     */
+    private boolean mFollowsMotion;
+    /**
+     * Whether the last plan taken had nowhere to go, in which case the wall follower drives until the next one
+     */
+    private boolean mNowhereToGo;
+    /**
+     * Reused to look up tiles in mWorldMap, so tiles that haven't changed cost no allocation
+     */
+    private final Coordinate mProbe = new Coordinate(0, 0);
 
     public MyAIController(Car car) {
+        this(car, car.getMapWidth() * car.getMapHeight() > HierarchicalSearch.LARGE_MAP_TILES
+                ? new HierarchicalSearch() : new LatticeSearch());
+    }
+
+    /**
+     * Create a controller that uses the given strategy for reaching keys, health and exits.
+     *
+     * @param car            Car to control
+     * @param searchStrategy Strategy to use for reaching goals, e.g. an incremental search such as DStarLiteSearch
+     */
+    protected MyAIController(Car car, SearchStrategy searchStrategy) {
         super(car);
-        mWorldMap = getMap();
+        // The world's map is a read-only view, so the controller keeps a copy it can fill in as the car sees tiles
+        mWorldMap = new HashMap<>(getMap());
         mPath = new ArrayList<>();
         mDirections = new ArrayList<>();
-        mSearchStrategy = new AStarSearch();
+        mSearchStrategy = searchStrategy;
+        mSearchStrategy.setTimeBudget(SEARCH_TIME_BUDGET);
         mExplorationStrategy = new ExplorationSearch();
 
         // Set all the roads to utility to mark them as "unexplored"
-        mWorldMap.entrySet().stream()
-                .map(entry -> {
-                    if (entry.getValue().isType(MapTile.Type.ROAD)) {
-                        entry.setValue(new MapTile(MapTile.Type.UTILITY));
-                    }
-                    return entry;
-                })
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        mWorldMap.replaceAll((coordinate, tile) -> tile.isType(MapTile.Type.ROAD)
+                ? new MapTile(MapTile.Type.UTILITY) : tile);
+        mWorldIndex = new TileIndex(mWorldMap);
+    }
+
+    /**
+     * Change how the plan to follow is picked from the searches run for each decision. The searches are added in order
+     * of preference: health when it is low, then keys or the exit, then exploring.
+     *
+     * @param scoringRule Rule deciding which search's plan wins
+     */
+    void setScoringRule(StrategyPortfolio.ScoringRule scoringRule) {
+        mPortfolio = new StrategyPortfolio(QUERY_POOL, scoringRule);
+    }
+
+    /**
+     * Make plans on a thread of their own from now on, so searching never holds up an update. The car keeps following
+     * the plan it has while the next is made from further along it. If it runs out of plan anyway it brakes, or keeps
+     * moving if it is on lava. From then on the strategies must only be used by the planning thread, which keeps its
+     * own copy of the map.
+     */
+    protected void startBackgroundPlanning() {
+        if (mPlanner == null) {
+            mPlannerMap = new HashMap<>(mWorldMap);
+            mPlannerIndex = new TileIndex(mPlannerMap);
+            mMotionPlanner = new LatticeSearch();
+            mPlanner = new BackgroundPlanner();
+        }
     }
 
     @Override
     public void update() {
         updateWorldMap();
+        if (mPlanner != null) {
+            mUpdates++;
+            if (mRequestedAt >= 0 && !mPlanner.isPlanning()) {
+                mPlanLatency = mUpdates - mRequestedAt;
+                mRequestedAt = -1;
+            }
+        }
 
-        if (explorationNeeded()) {
-            explore();
-        } else if (mWorldMap.get(getCarPosition()) instanceof HealthTrap && getHealth() < 100) {
-            applyBrake();
-            return;
-        } else if (healthNeeded()) {
-            maybeFindHealth();
-        } else {
-            setFollowing(false);
-            updatePath();
-            if (mDirections.isEmpty()) {
-                // Search couldn't find a path to any keys, therefore they are inaccessible
-                uncollectedKeys().clear();
-                explore();
+        if (!explorationNeeded(mWorldIndex, mCar.getKeys())) {
+            if (mWorldMap.get(getCarPosition()) instanceof HealthTrap && getHealth() < 100) {
+                if (mPlanner != null) {
+                    takePlan();
+                }
+                applyBrake();
+                planAfter(RelativeDirection.NONE);
+                return;
+            } else if (!healthNeeded(getHealth())) {
+                setFollowing(false);
             }
         }
 
+        if (mPlanner == null) {
+            Plan plan = plan(new PlanningState(mWorldMap, mWorldIndex, carState(), getHealth(), mCar.getKeys()));
+            mDirections = plan.directions;
+            mPath = plan.path;
+        } else if (!takePlan()) {
+            RelativeDirection escape = leaveLava();
+            if (escape == null) {
+                // Stop and plan from where the car stops, which the plan still starts from however long it takes
+                applyBrake();
+                planAfter(RelativeDirection.NONE);
+                return;
+            }
+            mDirections.add(escape);
+            mPath.add(getCarPosition());
+        }
 
         // When the search turns up nothing, we'll just fall back to the wall follower
         if (mDirections.isEmpty()) {
+            planAfter(null);
             super.update();
             return;
         }
 
         RelativeDirection nextDirection = mDirections.remove(0);
         mPath.remove(0);
+        planAfter(nextDirection);
 
         switch (nextDirection) {
             case LEFT:
@@ -111,67 +256,273 @@ public class MyAIController extends WallFollowingAIController {
     }
 
     /**
-     * Potentially find a route to health.
+     * Switch to the plan the planning thread has finished, if the car has kept to it.
+     *
+     * @return False if there is no plan that can be followed yet
+     */
+    private boolean takePlan() {
+        if (mUpdatesToPlanStart > 0 && !mDirections.isEmpty() && !mPathBlocked) {
+            // The car hasn't got to where the plan being made starts
+            return true;
+        }
+        long rejected = mPlanner.getRejected();
+        Plan plan = mPlanner.take(carState());
+        if (plan != null && plan.path.isEmpty() && mPlannedAhead) {
+            // Having nowhere to go from further along may only be because that part of the map hasn't been seen yet
+            plan = null;
+        }
+        if (mPlanner.isIdle()) {
+            mUpdatesToPlanStart = 0;
+        }
+        if (plan != null && !Collections.disjoint(plan.path, mHazardsSinceRequest)) {
+            // It was made before walls or traps on its path were seen, so it may drive the car into them
+            plan = null;
+            mPathBlocked = true;
+        }
+        if (plan != null) {
+            mDirections = plan.directions;
+            mPath = plan.path;
+            mNowhereToGo = plan.path.isEmpty();
+            mFollowsMotion = plan.followsMotion;
+            mPathBlocked = false;
+            mWaitingForPlan = false;
+        }
+        if (mPathBlocked || (!mPath.isEmpty() && !mPath.get(0).equals(getCarPosition())) ||
+                (mDirections.isEmpty() && !(mNowhereToGo && mPlanner.getRejected() == rejected))) {
+            // The car has left, come to the end of or seen something in the way of the plan it has, or is wall
+            // following when there's somewhere to go after all. Otherwise a newer plan that no longer fits is just
+            // dropped, as the one the car has still holds.
+            mPathBlocked = false;
+            mDirections = new ArrayList<>();
+            mPath = new ArrayList<>();
+            mWaitingForPlan = true;
+        }
+        return !mWaitingForPlan;
+    }
+
+    /**
+     * Find a direction that keeps the car moving on lava, where waiting for the next plan would only cost health.
+     *
+     * @return Direction onto a tile that isn't lava if there is one, else onto more lava, or null if the car isn't on
+     * lava or can't move
+     */
+    private RelativeDirection leaveLava() {
+        CarState now = carState();
+        if (!(mWorldMap.get(now.position) instanceof LavaTrap)) {
+            return null;
+        }
+        RelativeDirection[] directions = now.velocity < 0
+                ? new RelativeDirection[]{RelativeDirection.BACKWARD, RelativeDirection.LEFT, RelativeDirection.RIGHT}
+                : new RelativeDirection[]{RelativeDirection.FORWARD, RelativeDirection.LEFT, RelativeDirection.RIGHT};
+        RelativeDirection onLava = null;
+        for (RelativeDirection direction : directions) {
+            Coordinate next = LatticeSearch.predict(mWorldMap, now, direction).position;
+            MapTile tile = mWorldMap.get(next);
+            if (next.equals(now.position) || (tile instanceof TrapTile && !((TrapTile) tile).canAccelerate())) {
+                // Stopping in mud ends the game
+                continue;
+            }
+            if (!(tile instanceof LavaTrap)) {
+                return direction;
+            }
+            if (onLava == null) {
+                onLava = direction;
+            }
+        }
+        return onLava;
+    }
+
+    /**
+     * Let the planning thread know what the car is doing on this update and, if it is free, start the next plan. While
+     * the car follows a plan that keeps to its motion rules, the next starts as far along it as the car will have got
+     * by the time it is ready, going by how long the last plan took to make. Otherwise it starts from where the car
+     * will be after the update, and takes over on the next update if it is quick enough.
      *
-     * If there is a route to a goal (key or exit) that does not do damage then it is taken, otherwise, we go try to
-     * find a health trap.
-     */
-    private void maybeFindHealth() {
-        mSearchStrategy.startSearch(mWorldMap, getOrientation(), getCarPosition(), uncollectedKeys(),
-                exits(), getKeys());
-        if (noDamagePath(mSearchStrategy.getPath())) {
-            mDirections = mSearchStrategy.getDirections();
-            mPath = mSearchStrategy.getPath();
+     * @param direction Direction the car is following, NONE if it is braking, or null if the wall follower is about to
+     *                  drive and there's no telling where the car will be
+     */
+    private void planAfter(RelativeDirection direction) {
+        if (mPlanner == null) {
+            return;
+        }
+        CarState now = carState();
+        Set<Integer> keys = new HashSet<>(mCar.getKeys());
+        if (direction == null) {
+            requestPlan(now, getHealth(), keys, 0);
+            mPlanner.followed(RelativeDirection.NONE);
             return;
         }
-        List<Coordinate> healths = mWorldMap.entrySet().stream()
-                .filter(entry -> entry.getValue() instanceof HealthTrap)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-        mSearchStrategy.startSearch(mWorldMap, getOrientation(), getCarPosition(), healths, exits(), mCar.getKeys());
-        mDirections = mSearchStrategy.getDirections();
-        mPath = mSearchStrategy.getPath();
+        if (mUpdatesToPlanStart > 0 && direction != RelativeDirection.NONE) {
+            // The car is still on its way to where the plan being made starts
+            mUpdatesToPlanStart--;
+        } else {
+            mPlanner.followed(direction);
+        }
+        CarState start = LatticeSearch.predict(mWorldMap, now, direction);
+        float health = getHealth();
+        int ahead = 0;
+        if (direction != RelativeDirection.NONE && mFollowsMotion) {
+            // A plan that took one update is ready on the next, when the car is where it starts
+            ahead = Math.max(0, Math.min(mPlanLatency - 1, mDirections.size()));
+            // The car picks up keys and loses health on the way, which the plan must know about
+            health -= passOver(keys, mWorldMap.get(start.position));
+            for (int i = 0; i < ahead; i++) {
+                start = LatticeSearch.predict(mWorldMap, start, mDirections.get(i));
+                health -= passOver(keys, mWorldMap.get(start.position));
+            }
+        }
+        requestPlan(start, health, keys, ahead);
     }
 
     /**
-     * Check if the given path does not do any damage.
-     * @param path Path to check
-     * @return
+     * Add the key on a tile the car will end an update on.
+     *
+     * @return Health the car will lose there
+     */
+    private static int passOver(Set<Integer> keys, MapTile tile) {
+        if (!(tile instanceof LavaTrap)) {
+            return 0;
+        }
+        if (((LavaTrap) tile).getKey() > 0) {
+            keys.add(((LavaTrap) tile).getKey());
+        }
+        return ParetoSearch.LAVA_DAMAGE;
+    }
+
+    /**
+     * Start the next plan if the planning thread is free.
+     *
+     * @param car    State the plan starts from
+     * @param health Health the car will have by then
+     * @param keys   Keys the car will have by then
+     * @param ahead  Directions of the plan the car is following still to come before that state
+     */
+    private void requestPlan(CarState car, float health, Set<Integer> keys, int ahead) {
+        if (!mPlanner.isIdle()) {
+            return;
+        }
+        mUpdatesToPlanStart = ahead;
+        mPlannedAhead = ahead > 0;
+        mRequestedAt = mUpdates;
+        HashMap<Coordinate, MapTile> changes = new HashMap<>(mPendingChanges);
+        mPendingChanges.clear();
+        mHazardsSinceRequest.clear();
+        PlanningState state = new PlanningState(mPlannerMap, mPlannerIndex, car, health, keys);
+        mPlanner.request(car, () -> {
+            if (!changes.isEmpty()) {
+                mPlannerMap.putAll(changes);
+                mPlannerIndex.update(changes.keySet());
+                mapChanged(new ArrayList<>(changes.keySet()));
+            }
+            return followable(plan(state), state);
+        });
+    }
+
+    /**
+     * Make a plan that can be followed for as many updates as the next plan takes to make. A plan that doesn't follow
+     * the car's motion rules only holds for its first update, so its route is planned again with them.
+     */
+    private Plan followable(Plan plan, PlanningState state) {
+        if (plan.followsMotion || plan.path.isEmpty()) {
+            return plan;
+        }
+        mMotionPlanner.setInitialVelocity(state.velocity);
+        mMotionPlanner.startSearchAlong(state.map, state.orientation, state.position, plan.path, state.keys);
+        if (mMotionPlanner.getDirections().isEmpty()) {
+            // There's no room beside the route to get moving the way it goes, e.g. between lava, so drive to its end
+            // however the car can
+            List<Coordinate> end = new ArrayList<>();
+            end.add(plan.path.get(plan.path.size() - 1));
+            mMotionPlanner.startSearch(state.map, state.orientation, state.position, new ArrayList<>(), end,
+                    state.keys);
+        }
+        if (mMotionPlanner.getDirections().isEmpty()) {
+            return plan;
+        }
+        return new Plan(mMotionPlanner.getDirections(), mMotionPlanner.getPath(), true);
+    }
+
+    /**
+     * Decide what the car should do next: explore, head for health, or head for the keys and exits. The searches for
+     * each choice run at once, and the first in that order to find anywhere to go wins.
+     *
+     * @param state What the controller knows at the time
+     * @return Plan to follow, with no directions if there is nowhere to go
+     */
+    private Plan plan(PlanningState state) {
+        mSearchStrategy.setInitialVelocity(state.velocity);
+        mExplorationStrategy.setInitialVelocity(state.velocity);
+
+        if (!explorationNeeded(state.index, state.keys)) {
+            if (healthNeeded(state.health)) {
+                mPortfolio.add("health", null, () -> maybeFindHealth(state));
+            }
+            String goals = state.index.uncollectedKeys(state.keys).isEmpty() ? "exit" : "keys";
+            mPortfolio.add(goals, mSearchStrategy, () -> findPath(state));
+        }
+        // Also the fallback when search can't find a path to any keys, as they are then inaccessible
+        mPortfolio.add("explore", mExplorationStrategy, () -> explore(state));
+        Plan plan = mPortfolio.run();
+        return plan == null ? new Plan(new ArrayList<>(), new ArrayList<>(), false) : plan;
+    }
+
+    /**
+     * Potentially find a route to health.
+     *
+     * If there is a route to a goal (key or exit) that keeps the car's health above SAFE_HEALTH then it is taken,
+     * otherwise, we go to the nearest health trap we can reach alive. Both routes come from the same search.
+     *
+     * @return Plan to follow, with no directions if nowhere is safe and the car should carry on to the goals regardless
      */
-    private boolean noDamagePath(List<Coordinate> path) {
-        return path.stream()
-                .noneMatch(c -> mWorldMap.get(c).isType(MapTile.Type.TRAP) && !(mWorldMap.get(c) instanceof HealthTrap));
+    private Plan maybeFindHealth(PlanningState state) {
+        int survivableDamage = (int) state.health - 1;
+        mRouteSearch.search(state.map, state.position, survivableDamage);
+        List<Coordinate> keys = state.index.uncollectedKeys(state.keys);
+        List<Coordinate> goals = keys.isEmpty() ? state.index.exits() : keys;
+        Path route = mRouteSearch.bestRoute(goals, (int) state.health - SAFE_HEALTH);
+        if (route.path.isEmpty()) {
+            route = mRouteSearch.bestRoute(state.index.healths(), survivableDamage);
+        }
+        // Follow the route itself, as a search to its end may not keep within the damage allowed
+        return new Plan(mSearchStrategy.toRelativeDirection(route.path, state.orientation),
+                route.path, false);
     }
 
     /**
      * Check if the car requires health
      * @return
      */
-    private boolean healthNeeded() {
-        return getHealth() < 30;
+    private boolean healthNeeded(float health) {
+        return health < 30;
     }
 
     /**
-     * Set the AI on a course that will explore more of the map.
+     * Find a course that will explore more of the map. Only the frontier is searched for, as the nearest unexplored
+     * tile is always on it.
      */
-    private void explore() {
-
-        List<Coordinate> utilities = mWorldMap.entrySet().stream()
-                .filter(entry -> entry.getValue().isType(MapTile.Type.UTILITY))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-        mExplorationStrategy.startSearch(mWorldMap, getOrientation(), getCarPosition(), utilities, exits(), mCar.getKeys());
-        mDirections = mExplorationStrategy.getDirections();
-        mPath = mExplorationStrategy.getPath();
+    private Plan explore(PlanningState state) {
+        mExplorationStrategy.startSearch(state.map, state.orientation, state.position, state.index.frontier(),
+                state.index.exits(), state.keys);
+        return new Plan(mExplorationStrategy.getDirections(), mExplorationStrategy.getPath(),
+                mExplorationStrategy.plansMotion());
     }
 
     /**
      * Check if exploration of the map is needed
      * @return
      */
-    private boolean explorationNeeded() {
+    private boolean explorationNeeded(TileIndex index, Set<Integer> keysCollected) {
         // We need to do some exploring to find more keys
-        return uncollectedKeys().isEmpty() && mCar.getKeys().size() < numKeys();
+        return index.uncollectedKeys(keysCollected).isEmpty() && keysCollected.size() < numKeys();
+    }
+
+    /**
+     * Number of searches for keys and exits that have run past SEARCH_TIME_BUDGET. With background planning they run on
+     * the planning thread, so the count may be behind by the search running now.
+     */
+    @Override
+    public long getBudgetOverruns() {
+        return mSearchStrategy.getBudgetOverruns();
     }
 
     public List<Coordinate> getPath() {
@@ -179,54 +530,113 @@ public class MyAIController extends WallFollowingAIController {
     }
 
     /**
-     * Update the controller's path based on the current map of the world.
+     * Find a path to the keys and exits based on the given map of the world.
      */
-    private void updatePath() {
-        mSearchStrategy.startSearch(mWorldMap, mCar.getOrientation(), getCarPosition(), uncollectedKeys(), exits(), mCar.getKeys());
-        mDirections = mSearchStrategy.getDirections();
-        mPath = mSearchStrategy.getPath();
+    private Plan findPath(PlanningState state) {
+        mSearchStrategy.startSearch(state.map, state.orientation, state.position,
+                state.index.uncollectedKeys(state.keys), state.index.exits(), state.keys);
+        return new Plan(mSearchStrategy.getDirections(), mSearchStrategy.getPath(),
+                mSearchStrategy.plansMotion());
+    }
+
+    private CarState carState() {
+        return new CarState(getCarPosition(), getOrientation(), mCar.getVelocity());
     }
 
     /**
-     * Find all the exits on the current map
+     * Get the car's current position as CarController's getPosition method returns a string.
      * @return
      */
-    private List<Coordinate> exits() {
-        return mWorldMap.entrySet().stream()
-                .filter(entry -> entry.getValue().isType(MapTile.Type.FINISH))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+    private Coordinate getCarPosition() {
+        return new Coordinate(Math.round(mCar.getX()), Math.round(mCar.getY()));
     }
 
     /**
-     * Find all keys that we know of but have not been collected.
-     *
-     * This method excluded duplicate keys.
-     * @return
+     * Update the world map based on the car's current view, and let the strategies know which tiles changed.
      */
-    private List<Coordinate> uncollectedKeys() {
-        return mWorldMap.entrySet().stream()
-                .filter(entry -> entry.getValue() instanceof LavaTrap &&
-                        ((LavaTrap) entry.getValue()).getKey() > 0 &&
-                        !(mCar.getKeys().contains(((LavaTrap) entry.getValue()).getKey())))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+    private void updateWorldMap() {
+        CarView view = getCarView();
+        int viewSquare = view.getViewSquare();
+        List<Coordinate> changedTiles = new ArrayList<>();
+        for (int x = view.getCentreX() - viewSquare; x <= view.getCentreX() + viewSquare; x++) {
+            for (int y = view.getCentreY() - viewSquare; y <= view.getCentreY() + viewSquare; y++) {
+                MapTile tile = view.tileAt(x, y);
+                if (tile.isType(MapTile.Type.EMPTY)) {
+                    continue;
+                }
+                mProbe.x = x;
+                mProbe.y = y;
+                if (!sameTile(mWorldMap.get(mProbe), tile)) {
+                    Coordinate coordinate = new Coordinate(x, y);
+                    mWorldMap.put(coordinate, tile);
+                    changedTiles.add(coordinate);
+                }
+            }
+        }
+        if (changedTiles.isEmpty()) {
+            return;
+        }
+        mWorldIndex.update(changedTiles);
+        if (mPlanner == null) {
+            mapChanged(changedTiles);
+        } else {
+            // The strategies belong to the planning thread, which is told about the changes with its next plan
+            for (Coordinate coordinate : changedTiles) {
+                MapTile tile = mWorldMap.get(coordinate);
+                mPendingChanges.put(coordinate, tile);
+                if (tile.isType(MapTile.Type.WALL) || (tile instanceof TrapTile && !(tile instanceof HealthTrap))) {
+                    mHazardsSinceRequest.add(coordinate);
+                    mPathBlocked |= mPath.contains(coordinate);
+                }
+            }
+        }
     }
 
     /**
-     * Get the car's current position as CarController's getPosition method returns a string.
-     * @return
+     * Check if a tile the car sees is the one already on the map. The world may hand out a new instance of a trap the
+     * car has seen before, as compiled maps drop the traps far from the car and make them again when it comes back, so
+     * traps are compared by kind and key rather than by identity.
      */
-    private Coordinate getCarPosition() {
-        return new Coordinate(Math.round(mCar.getX()), Math.round(mCar.getY()));
+    private static boolean sameTile(MapTile known, MapTile seen) {
+        if (known == seen) {
+            return true;
+        }
+        if (known == null || known.getType() != seen.getType()) {
+            return false;
+        }
+        if (!(seen instanceof TrapTile)) {
+            return true;
+        }
+        return known.getClass() == seen.getClass() &&
+                (!(seen instanceof LavaTrap) || ((LavaTrap) known).getKey() == ((LavaTrap) seen).getKey());
+    }
+
+    private void mapChanged(List<Coordinate> changedTiles) {
+        mSearchStrategy.mapChanged(changedTiles);
+        mExplorationStrategy.mapChanged(changedTiles);
     }
 
     /**
-     * Update the world map based on the car's current view.
+     * What the controller knows about the car and the world when it makes a plan.
      */
-    private void updateWorldMap() {
-        HashMap<Coordinate, MapTile> relevantView = mCar.getView();
-        relevantView.entrySet().removeIf(entry -> entry.getValue().isType(MapTile.Type.EMPTY));
-        mWorldMap.putAll(relevantView);
+    private static class PlanningState {
+        final HashMap<Coordinate, MapTile> map;
+        final TileIndex index;
+        final Coordinate position;
+        final WorldSpatial.Direction orientation;
+        final int velocity;
+        final float health;
+        final Set<Integer> keys;
+
+        PlanningState(HashMap<Coordinate, MapTile> map, TileIndex index, CarState car, float health,
+                      Set<Integer> keys) {
+            this.map = map;
+            this.index = index;
+            this.position = car.position;
+            this.orientation = car.orientation;
+            this.velocity = car.velocity;
+            this.health = health;
+            this.keys = keys;
+        }
     }
 }
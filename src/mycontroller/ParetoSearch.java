@@ -0,0 +1,170 @@
+package mycontroller;
+
+import tiles.LavaTrap;
+import tiles.MapTile;
+import utilities.Coordinate;
+
+import java.util.*;
+
+/**
+ * Label setting search over damage and distance, for finding routes that leave the car with enough health.
+ *
+ * A single damage or distance score per tile, as ExplorationSearch keeps, throws away routes that are longer but do
+ * less damage. Here each tile instead keeps every (damage, distance) label that no other label at the tile beats on
+ * both counts. Labels are expanded in order of distance, so the first label to settle on a tile within a damage budget
+ * is the shortest route there that stays within it.
+ *
+ * One flood from the car answers the shortest route within any damage budget up to the one it was run with, to any
+ * set of goals, so choosing between a goal and health only needs one search.
+ */
+class ParetoSearch {
+    /**
+     * Damage taken driving onto a lava tile. Car.update() always steps with a delta of a quarter.
+     */
+    static final int LAVA_DAMAGE = Math.round(LavaTrap.HealthDelta * 0.25f);
+    /**
+     * Extra distance for unexplored tiles, as they may hide traps
+     */
+    private static final int UNEXPLORED_COST = 10;
+    private static final int NO_LABEL = -1;
+
+    /**
+     * Grid indexing for the map being searched
+     */
+    private final SearchWorkspace mGrid = new SearchWorkspace();
+    private final int[] mNeighbours = new int[4];
+
+    // Labels, indexed by label id
+    private int[] mLabelNode = new int[64];
+    private int[] mLabelDamage = new int[64];
+    private int[] mLabelDistance = new int[64];
+    private int[] mLabelParent = new int[64];
+    /**
+     * Next label at the same tile. The first label of each tile is kept in the workspace's cameFrom score, so the
+     * lists reset with every search.
+     */
+    private int[] mLabelNext = new int[64];
+    private boolean[] mLabelDominated = new boolean[64];
+    private int mLabelCount;
+    /**
+     * Labels still to be expanded, by distance and then damage. Labels are dropped from it as soon as they are beaten.
+     */
+    private final IndexedMinHeap mOpenSet = new IndexedMinHeap(64);
+    private boolean mSearched;
+
+    /**
+     * Flood from the car, keeping every route that does no more than the given damage.
+     *
+     * @param map       Map we're navigating on
+     * @param start     Car's position
+     * @param maxDamage Most damage any route may do
+     */
+    void search(HashMap<Coordinate, MapTile> map, Coordinate start, int maxDamage) {
+        mGrid.begin(map);
+        mOpenSet.clear();
+        mLabelCount = 0;
+        mSearched = false;
+        int startNode = mGrid.index(start);
+        if (startNode < 0 || maxDamage < 0) {
+            return;
+        }
+        mSearched = true;
+        addLabel(startNode, 0, 0, NO_LABEL);
+
+        while (!mOpenSet.isEmpty()) {
+            int label = mOpenSet.poll();
+            int node = mLabelNode[label];
+            int neighbourCount = mGrid.neighbours(node, map, mNeighbours);
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = mNeighbours[i];
+                MapTile tile = map.get(mGrid.coordinate(neighbour));
+                int damage = mLabelDamage[label] + (tile instanceof LavaTrap ? LAVA_DAMAGE : 0);
+                int distance = mLabelDistance[label] + (tile.isType(MapTile.Type.UTILITY) ? 1 + UNEXPLORED_COST : 1);
+                if (damage <= maxDamage) {
+                    addLabel(neighbour, damage, distance, label);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shortest route found by the last search to any of the goals that does no more than the given damage.
+     *
+     * @param goals     Goals the route may end on
+     * @param maxDamage Most damage the route may do, at most the budget the search was run with
+     * @return Route and the damage it does, with an empty path if no goal can be reached within the budget
+     */
+    Path bestRoute(List<Coordinate> goals, int maxDamage) {
+        Path route = new Path();
+        if (!mSearched) {
+            return route;
+        }
+        int best = NO_LABEL;
+        for (Coordinate goal : goals) {
+            int node = mGrid.index(goal);
+            if (node < 0) {
+                continue;
+            }
+            for (int label = mGrid.getCameFrom(node); label != NO_LABEL; label = mLabelNext[label]) {
+                if (!mLabelDominated[label] && mLabelDamage[label] <= maxDamage &&
+                        (best == NO_LABEL || mLabelDistance[label] < mLabelDistance[best])) {
+                    best = label;
+                }
+            }
+        }
+        if (best == NO_LABEL) {
+            return route;
+        }
+        route.damage = mLabelDamage[best];
+        for (int label = best; label != NO_LABEL; label = mLabelParent[label]) {
+            route.path.add(mGrid.coordinate(mLabelNode[label]));
+        }
+        route.reverse();
+        return route;
+    }
+
+    /**
+     * Add a label to a tile unless one of the tile's labels is at least as good on both counts, dropping any labels
+     * the new one beats.
+     */
+    private void addLabel(int node, int damage, int distance, int parent) {
+        int head = mGrid.getCameFrom(node);
+        for (int label = head; label != NO_LABEL; label = mLabelNext[label]) {
+            if (mLabelDominated[label]) {
+                continue;
+            }
+            if (mLabelDamage[label] <= damage && mLabelDistance[label] <= distance) {
+                return;
+            }
+            if (damage <= mLabelDamage[label] && distance <= mLabelDistance[label]) {
+                mLabelDominated[label] = true;
+                if (mOpenSet.contains(label)) {
+                    mOpenSet.remove(label);
+                }
+            }
+        }
+        if (mLabelCount == mLabelNode.length) {
+            grow();
+        }
+        int label = mLabelCount++;
+        mLabelNode[label] = node;
+        mLabelDamage[label] = damage;
+        mLabelDistance[label] = distance;
+        mLabelParent[label] = parent;
+        mLabelNext[label] = head;
+        mLabelDominated[label] = false;
+        mGrid.setCameFrom(node, label);
+        mOpenSet.add(label, (long) distance << 32 | damage);
+    }
+
+    private void grow() {
+        int capacity = mLabelNode.length * 2;
+        mLabelNode = Arrays.copyOf(mLabelNode, capacity);
+        mLabelDamage = Arrays.copyOf(mLabelDamage, capacity);
+        mLabelDistance = Arrays.copyOf(mLabelDistance, capacity);
+        mLabelParent = Arrays.copyOf(mLabelParent, capacity);
+        mLabelNext = Arrays.copyOf(mLabelNext, capacity);
+        mLabelDominated = Arrays.copyOf(mLabelDominated, capacity);
+        mOpenSet.grow(capacity);
+    }
+}
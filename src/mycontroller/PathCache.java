@@ -0,0 +1,127 @@
+package mycontroller;
+
+import tiles.MapTile;
+import utilities.Coordinate;
+
+import java.util.*;
+
+/**
+ * Bounded least recently used cache of search results.
+ *
+ * Paths are keyed on the start, goal and keys collected, and on the map and its version, so any change to the known
+ * map makes the paths found on the old version unreachable until they fall out of the cache. A path found from one
+ * start is also good from any later tile on it, as the rest of a cheapest path is itself a cheapest path. So if there
+ * is no path from the exact start, the rest of a cached path that passes through the start is served instead.
+ */
+class PathCache {
+    private final LinkedHashMap<Key, List<Coordinate>> mPaths;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * @param capacity Most paths kept before the least recently used one is dropped
+     */
+    PathCache(int capacity) {
+        mPaths = new LinkedHashMap<Key, List<Coordinate>>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<Coordinate>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Look up a path, counting a hit or a miss.
+     *
+     * @return Path from the start to the goal, or null if none is cached
+     */
+    List<Coordinate> get(HashMap<Coordinate, MapTile> map, int mapVersion, Coordinate start, Coordinate goal,
+                         Set<Integer> keysCollected) {
+        Key key = new Key(map, mapVersion, start, goal, keysCollected);
+        List<Coordinate> path = mPaths.get(key);
+        if (path == null) {
+            path = suffix(key);
+        }
+        if (path == null) {
+            mMisses++;
+        } else {
+            mHits++;
+        }
+        return path;
+    }
+
+    void put(HashMap<Coordinate, MapTile> map, int mapVersion, Coordinate start, Coordinate goal,
+             Set<Integer> keysCollected, List<Coordinate> path) {
+        mPaths.put(new Key(map, mapVersion, start, goal, new HashSet<>(keysCollected)),
+                Collections.unmodifiableList(new ArrayList<>(path)));
+    }
+
+    /**
+     * Find a cached path to the same goal that passes through the start, and cache the rest of it from the start.
+     */
+    private List<Coordinate> suffix(Key key) {
+        for (Map.Entry<Key, List<Coordinate>> entry : mPaths.entrySet()) {
+            List<Coordinate> path = entry.getValue();
+            int position = path.indexOf(key.mStart);
+            if (position > 0 && position < path.size() - 1 && entry.getKey().sameQueryTo(key)) {
+                List<Coordinate> rest = Collections.unmodifiableList(new ArrayList<>(path.subList(position,
+                        path.size())));
+                mPaths.put(new Key(key.mMap, key.mMapVersion, key.mStart, key.mGoal,
+                        new HashSet<>(key.mKeysCollected)), rest);
+                return rest;
+            }
+        }
+        return null;
+    }
+
+    long getHits() {
+        return mHits;
+    }
+
+    long getMisses() {
+        return mMisses;
+    }
+
+    private static class Key {
+        private final HashMap<Coordinate, MapTile> mMap;
+        private final int mMapVersion;
+        private final Coordinate mStart;
+        private final Coordinate mGoal;
+        private final Set<Integer> mKeysCollected;
+
+        Key(HashMap<Coordinate, MapTile> map, int mapVersion, Coordinate start, Coordinate goal,
+            Set<Integer> keysCollected) {
+            mMap = map;
+            mMapVersion = mapVersion;
+            mStart = start;
+            mGoal = goal;
+            mKeysCollected = keysCollected;
+        }
+
+        /**
+         * Check if this key is for the same goal, keys and map as another, whatever the start.
+         */
+        boolean sameQueryTo(Key other) {
+            return mMap == other.mMap && mMapVersion == other.mMapVersion && mGoal.equals(other.mGoal) &&
+                    mKeysCollected.equals(other.mKeysCollected);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return sameQueryTo(key) && mStart.equals(key.mStart);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(mMap);
+            result = 31 * result + mMapVersion;
+            result = 31 * result + mStart.hashCode();
+            result = 31 * result + mGoal.hashCode();
+            result = 31 * result + mKeysCollected.hashCode();
+            return result;
+        }
+    }
+}
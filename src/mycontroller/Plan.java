@@ -0,0 +1,55 @@
+package mycontroller;
+
+import utilities.Coordinate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Directions for the car to follow, along with the path they take it on.
+ */
+class Plan {
+    final List<RelativeDirection> directions;
+    /**
+     * Car's position before each direction is followed
+     */
+    final List<Coordinate> path;
+    /**
+     * Whether the directions follow the car's motion rules, as given by SearchStrategy.plansMotion()
+     */
+    final boolean followsMotion;
+
+    Plan(List<RelativeDirection> directions, List<Coordinate> path, boolean followsMotion) {
+        this.directions = directions;
+        this.path = path;
+        this.followsMotion = followsMotion;
+    }
+
+    /**
+     * The rest of this plan after the car has already done some updates since it was made.
+     *
+     * @param start    State the plan was made from
+     * @param followed Directions the car has followed since the plan was made, NONE for updates where it did anything
+     *                 else
+     * @param now      Car's state now
+     * @return Directions and path from the car's state, or null if the car is somewhere the plan doesn't start from or
+     * take it through. The whole plan holds if the car is back in the state it was made from, however it got there,
+     * e.g. after braking while stopped. A plan with no directions always holds.
+     */
+    Plan after(CarState start, List<RelativeDirection> followed, CarState now) {
+        int done = followed.size();
+        if (directions.isEmpty()) {
+            // Having nowhere to go holds wherever the car has got to since
+            return new Plan(new ArrayList<>(), new ArrayList<>(), followsMotion);
+        }
+        if (done <= directions.size() && directions.subList(0, done).equals(followed) &&
+                path.get(done).equals(now.position)) {
+            return new Plan(new ArrayList<>(directions.subList(done, directions.size())),
+                    new ArrayList<>(path.subList(done, path.size())), followsMotion);
+        }
+        if (now.equals(start)) {
+            return new Plan(new ArrayList<>(directions), new ArrayList<>(path), followsMotion);
+        }
+        return null;
+    }
+}
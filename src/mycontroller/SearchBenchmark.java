@@ -0,0 +1,117 @@
+package mycontroller;
+
+import tiles.MapTile;
+import utilities.Coordinate;
+import world.TmxMapReader;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Compares node expansions and run time of the search strategies on the same queries.
+ *
+ * For each map, random start and goal pairs are searched on three versions of the map: fully revealed with no keys
+ * collected, fully revealed with every key collected, and as the controller first sees it, where all road is still
+ * unexplored. Bidirectional search falls back to one direction while keys are left to collect, so it only differs from
+ * AStarSearch in the last two. The cost column is the total cost of the paths found, with AStarSearch.moveCost(), and
+ * found the number of queries a path was found for, so strategies that find the same answers show the same of both.
+ * DStarLiteSearch costs keys as road and so can differ where there are keys to collect, and HierarchicalSearch only
+ * returns the route as far as the next cluster. Run from the project root with the libraries on the classpath:
+ *
+ *     java mycontroller.SearchBenchmark [map.tmx ...]
+ *
+ * With no arguments the bundled maps in assets/ are used. Every query here is for a new goal, so DStarLiteSearch
+ * searches from scratch each time; DStarLiteBenchmark measures it replanning as the map is revealed.
+ */
+public class SearchBenchmark {
+    static final String[] BUNDLED_MAPS = {
+            "assets/basic-map.tmx", "assets/easy-map.tmx", "assets/lecture-preview.tmx", "assets/test-key-map.tmx"
+    };
+    private static final int QUERIES = 200;
+    private static final long SEED = 30006;
+
+    public static void main(String[] args) throws IOException {
+        String[] maps = args.length > 0 ? args : BUNDLED_MAPS;
+        System.out.printf("%-28s %-10s %-28s %10s %10s %10s %10s %12s %10s%n",
+                "map", "variant", "strategy", "queries", "found", "cost", "expanded", "expanded/q", "ms");
+        for (String mapPath : maps) {
+            TmxMapReader reader = TmxMapReader.read(mapPath);
+            HashMap<Coordinate, MapTile> revealed = reader.getTiles();
+            HashMap<Coordinate, MapTile> unexplored = new HashMap<>(revealed);
+            unexplored.replaceAll((coordinate, tile) -> tile.isType(MapTile.Type.ROAD) || tile.isType(MapTile.Type.TRAP)
+                    ? new MapTile(MapTile.Type.UTILITY) : tile);
+
+            List<Coordinate[]> queries = queries(revealed, QUERIES, SEED);
+            String name = mapPath.substring(mapPath.lastIndexOf('/') + 1);
+            Set<Integer> allKeys = new HashSet<>();
+            for (int key = 1; key <= reader.getNumKeys(); key++) {
+                allKeys.add(key);
+            }
+            run(name, "revealed", revealed, Collections.emptySet(), queries, new AStarSearch(),
+                    bidirectional(new AStarSearch()), new JumpPointSearch(), new HierarchicalSearch(),
+                    new DStarLiteSearch());
+            run(name, "collected", revealed, allKeys, queries, new AStarSearch(), bidirectional(new AStarSearch()),
+                    new JumpPointSearch(), new HierarchicalSearch(), new DStarLiteSearch());
+            run(name, "unexplored", unexplored, Collections.emptySet(), queries, new AStarSearch(),
+                    bidirectional(new AStarSearch()), new JumpPointSearch(), new HierarchicalSearch(),
+                    new DStarLiteSearch());
+        }
+    }
+
+    private static AStarSearch bidirectional(AStarSearch strategy) {
+        strategy.setBidirectional(true);
+        return strategy;
+    }
+
+    /**
+     * Pick random pairs of tiles that can be driven on, the same pairs for the same map and seed.
+     */
+    static List<Coordinate[]> queries(HashMap<Coordinate, MapTile> map, int count, long seed) {
+        List<Coordinate> passable = new ArrayList<>();
+        for (Map.Entry<Coordinate, MapTile> entry : map.entrySet()) {
+            if (SearchWorkspace.isPassable(entry.getValue())) {
+                passable.add(entry.getKey());
+            }
+        }
+        passable.sort(Comparator.comparingInt((Coordinate c) -> c.y).thenComparingInt(c -> c.x));
+        Random random = new Random(seed);
+        List<Coordinate[]> queries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            queries.add(new Coordinate[]{
+                    passable.get(random.nextInt(passable.size())), passable.get(random.nextInt(passable.size()))
+            });
+        }
+        return queries;
+    }
+
+    private static void run(String mapName, String variant, HashMap<Coordinate, MapTile> map,
+                            Set<Integer> keysCollected, List<Coordinate[]> queries, AStarSearch... strategies) {
+        for (AStarSearch strategy : strategies) {
+            // Warm up so the timings are of compiled code
+            for (Coordinate[] query : queries) {
+                strategy.search(map, query[0], query[1], keysCollected);
+            }
+            strategy.resetNodesExpanded();
+            List<List<Coordinate>> paths = new ArrayList<>();
+            long startTime = System.nanoTime();
+            for (Coordinate[] query : queries) {
+                paths.add(strategy.search(map, query[0], query[1], keysCollected));
+            }
+            long elapsed = System.nanoTime() - startTime;
+            long expanded = strategy.getNodesExpanded();
+            int found = 0;
+            long cost = 0;
+            for (List<Coordinate> path : paths) {
+                if (!path.isEmpty()) {
+                    found++;
+                }
+                for (int i = 1; i < path.size(); i++) {
+                    cost += strategies[0].moveCost(map.get(path.get(i)), keysCollected);
+                }
+            }
+            System.out.printf("%-28s %-10s %-28s %10d %10d %10d %10d %12.1f %10.2f%n", mapName, variant,
+                    strategy.getClass().getSimpleName() + (strategy.isBidirectional() ? " (bidirectional)" : ""),
+                    queries.size(), found, cost, expanded, expanded / (double) queries.size(), elapsed / 1e6);
+        }
+    }
+}
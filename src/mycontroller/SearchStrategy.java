@@ -12,6 +12,36 @@ import java.util.Set;
 import static mycontroller.RelativeDirection.*;
 
 public abstract class SearchStrategy {
+    /**
+     * Open/closed sets reused between searches run by this strategy
+     */
+    private final SearchWorkspace mWorkspace = new SearchWorkspace();
+    /**
+     * Number of nodes expanded by this strategy's searches
+     */
+    private long mNodesExpanded;
+    /**
+     * Bumped every time the map is reported to have changed
+     */
+    private int mMapVersion;
+    /**
+     * Car's velocity at the start of the next search
+     */
+    private int mInitialVelocity;
+    /**
+     * Time each search may take in nanoseconds, or 0 for no limit
+     */
+    private long mTimeBudget;
+    private long mDeadline;
+    /**
+     * Number of searches that took longer than the time budget
+     */
+    private long mBudgetOverruns;
+    /**
+     * Set from another thread when the search running now is no longer wanted
+     */
+    private volatile boolean mCancelled;
+
     public abstract void startSearch(HashMap<Coordinate, MapTile> map, WorldSpatial.Direction direction, Coordinate initialPos, List<Coordinate> intermediateGoals,
                                      List<Coordinate> finalGoals, Set<Integer> keysCollected);
 
@@ -19,6 +49,142 @@ public abstract class SearchStrategy {
 
     public abstract List<Coordinate> getPath();
 
+    /**
+     * Number of nodes this strategy has expanded since it was created or last reset. Used to compare how much work
+     * different strategies do for the same queries.
+     */
+    public long getNodesExpanded() {
+        return mNodesExpanded;
+    }
+
+    public void resetNodesExpanded() {
+        mNodesExpanded = 0;
+    }
+
+    /**
+     * Record that a search has taken a node off its open set to expand it.
+     */
+    protected void nodeExpanded() {
+        mNodesExpanded++;
+    }
+
+    /**
+     * Tell the strategy that tiles on the map it searches have changed since the last search, e.g. because the car
+     * has seen them for the first time. Strategies that keep state between searches can use this to repair only the
+     * parts of that state that depend on the changed tiles.
+     *
+     * @param changedTiles Coordinates of the tiles that have changed
+     */
+    public void mapChanged(List<Coordinate> changedTiles) {
+        mMapVersion++;
+    }
+
+    /**
+     * Version of the known map, which changes whenever mapChanged() is called. Results computed for one version can
+     * be reused for as long as the version stays the same.
+     */
+    protected int getMapVersion() {
+        return mMapVersion;
+    }
+
+    /**
+     * Tell the strategy how fast the car is moving before the next startSearch(). Strategies that plan with the car's
+     * motion rules start from this velocity, others ignore it.
+     *
+     * @param velocity Car's velocity, negative when reversing
+     */
+    public void setInitialVelocity(int velocity) {
+        mInitialVelocity = velocity;
+    }
+
+    protected int getInitialVelocity() {
+        return mInitialVelocity;
+    }
+
+    /**
+     * Check if the directions this strategy gives follow the car's motion rules, one per update, so they can be
+     * followed for many updates without planning again. Directions from other strategies only hold for the first
+     * update, as they ignore e.g. that the car can't turn while stopped.
+     */
+    public boolean plansMotion() {
+        return false;
+    }
+
+    /**
+     * Limit how long each startSearch() may take. Anytime strategies return the best path they have found when the
+     * time is up and carry on improving it in the next search, LatticeSearch returns a plan as far towards the goal as
+     * it has got, and others ignore the limit.
+     *
+     * @param nanos Time each search may take in nanoseconds, or 0 for no limit
+     */
+    public void setTimeBudget(long nanos) {
+        mTimeBudget = nanos;
+    }
+
+    public long getTimeBudget() {
+        return mTimeBudget;
+    }
+
+    /**
+     * Number of searches that have taken longer than the time budget, counted by strategies that honour it.
+     */
+    public long getBudgetOverruns() {
+        return mBudgetOverruns;
+    }
+
+    /**
+     * Start timing a search against the time budget.
+     */
+    protected void startBudget() {
+        mDeadline = System.nanoTime() + mTimeBudget;
+    }
+
+    /**
+     * @return System.nanoTime() by which the current search should finish
+     */
+    protected long getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * Finish timing a search, counting an overrun if it went past the deadline.
+     */
+    protected void endBudget() {
+        if (mTimeBudget > 0 && System.nanoTime() - mDeadline > 0) {
+            mBudgetOverruns++;
+        }
+    }
+
+    /**
+     * Ask the search running on another thread to stop as soon as it can. A cancelled search leaves an empty or
+     * partial path, which shouldn't be followed, and caches nothing. Searches stay cancelled until resetCancelled().
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public void resetCancelled() {
+        mCancelled = false;
+    }
+
+    /**
+     * Check if searches should stop, polled by their main loops.
+     */
+    protected boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Get the search workspace ready for a new search over the given map.
+     *
+     * @param map Map that is about to be searched
+     * @return Cleared workspace sized to the map
+     */
+    SearchWorkspace beginSearch(HashMap<Coordinate, MapTile> map) {
+        mWorkspace.begin(map);
+        return mWorkspace;
+    }
+
     /**
      * Convert a path given in coordinates to a list of relative directions.
      *
@@ -0,0 +1,275 @@
+package mycontroller;
+
+import tiles.MapTile;
+import tiles.MudTrap;
+import utilities.Coordinate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reusable state for searches over the tile grid.
+ *
+ * Coordinates are mapped to flat node indices (y * width + x) so the open and closed sets and the per node scores can
+ * be backed by arrays rather than collections keyed by coordinate. The grid bounds are taken from the map being
+ * searched and only recomputed when a different map is given.
+ *
+ * Scores are not cleared between searches. Instead each node is stamped with the generation of the search that last
+ * wrote to it, and nodes with an old stamp read as unreached.
+ */
+class SearchWorkspace {
+    /**
+     * Score of a node that has not been reached in the current search
+     */
+    static final int UNREACHED = Integer.MAX_VALUE;
+    /**
+     * Parent of a node that has no parent in the current search
+     */
+    static final int NO_PARENT = -1;
+
+    /**
+     * Discovered but unevaluated nodes
+     */
+    private final IndexedMinHeap mOpenSet = new IndexedMinHeap();
+    /**
+     * Evaluated nodes
+     */
+    private final BitSet mClosedSet = new BitSet();
+    /**
+     * Target nodes for searches that look for the best of several goals
+     */
+    private final BitSet mGoalSet = new BitSet();
+    /**
+     * Shared coordinate for each node, so paths can be built without allocating new coordinates
+     */
+    private Coordinate[] mCoordinates = new Coordinate[0];
+    private int[] mGScore = new int[0];
+    private int[] mFScore = new int[0];
+    private int[] mDScore = new int[0];
+    private int[] mCameFrom = new int[0];
+    /**
+     * Generation of the search that last wrote each node's scores
+     */
+    private int[] mStamps = new int[0];
+    private int mGeneration;
+    private HashMap<Coordinate, MapTile> mMap;
+    private int mMapSize = -1;
+    private int mMinX, mMinY, mWidth, mHeight;
+
+    /**
+     * Prepare the workspace for a new search over the given map. This clears the open, closed and goal sets.
+     *
+     * @param map Map that is about to be searched
+     */
+    void begin(HashMap<Coordinate, MapTile> map) {
+        if (map != mMap || map.size() != mMapSize) {
+            fitBounds(map);
+        }
+        mOpenSet.clear();
+        mClosedSet.clear();
+        mGoalSet.clear();
+        if (++mGeneration == 0) {
+            // Stamps wrapped around, so old stamps could be mistaken for the current generation
+            Arrays.fill(mStamps, 0);
+            mGeneration = 1;
+        }
+    }
+
+    IndexedMinHeap getOpenSet() {
+        return mOpenSet;
+    }
+
+    BitSet getClosedSet() {
+        return mClosedSet;
+    }
+
+    BitSet getGoalSet() {
+        return mGoalSet;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return Number of nodes in the grid
+     */
+    int size() {
+        return mWidth * mHeight;
+    }
+
+    /**
+     * Node index of a coordinate.
+     *
+     * @param coordinate Coordinate to index
+     * @return Node index, or -1 if the coordinate lies outside the map
+     */
+    int index(Coordinate coordinate) {
+        return index(coordinate.x, coordinate.y);
+    }
+
+    int index(int x, int y) {
+        int col = x - mMinX;
+        int row = y - mMinY;
+        if (col < 0 || row < 0 || col >= mWidth || row >= mHeight) {
+            return -1;
+        }
+        return row * mWidth + col;
+    }
+
+    /**
+     * Coordinate of a node index. The same coordinate object is returned for the same node every time.
+     *
+     * @param index Node index
+     * @return Coordinate of the node
+     */
+    Coordinate coordinate(int index) {
+        Coordinate coordinate = mCoordinates[index];
+        if (coordinate == null) {
+            coordinate = new Coordinate(mMinX + index % mWidth, mMinY + index / mWidth);
+            mCoordinates[index] = coordinate;
+        }
+        return coordinate;
+    }
+
+    int getGScore(int node) {
+        return mStamps[node] == mGeneration ? mGScore[node] : UNREACHED;
+    }
+
+    void setGScore(int node, int score) {
+        touch(node);
+        mGScore[node] = score;
+    }
+
+    int getFScore(int node) {
+        return mStamps[node] == mGeneration ? mFScore[node] : UNREACHED;
+    }
+
+    void setFScore(int node, int score) {
+        touch(node);
+        mFScore[node] = score;
+    }
+
+    int getDScore(int node) {
+        return mStamps[node] == mGeneration ? mDScore[node] : UNREACHED;
+    }
+
+    void setDScore(int node, int score) {
+        touch(node);
+        mDScore[node] = score;
+    }
+
+    int getCameFrom(int node) {
+        return mStamps[node] == mGeneration ? mCameFrom[node] : NO_PARENT;
+    }
+
+    void setCameFrom(int node, int parent) {
+        touch(node);
+        mCameFrom[node] = parent;
+    }
+
+    /**
+     * Collect the passable neighbours of a node, i.e. those that are on the map and are not walls, mud or empty.
+     *
+     * @param node       Node to get neighbours of
+     * @param map        Map on which we can find the neighbours
+     * @param neighbours Buffer of at least four entries that the neighbours are written to
+     * @return Number of neighbours written
+     */
+    int neighbours(int node, HashMap<Coordinate, MapTile> map, int[] neighbours) {
+        int x = node % mWidth;
+        int y = node / mWidth;
+        int count = 0;
+        if (x + 1 < mWidth && isPassable(map.get(coordinate(node + 1)))) {
+            neighbours[count++] = node + 1;
+        }
+        if (x > 0 && isPassable(map.get(coordinate(node - 1)))) {
+            neighbours[count++] = node - 1;
+        }
+        if (y + 1 < mHeight && isPassable(map.get(coordinate(node + mWidth)))) {
+            neighbours[count++] = node + mWidth;
+        }
+        if (y > 0 && isPassable(map.get(coordinate(node - mWidth)))) {
+            neighbours[count++] = node - mWidth;
+        }
+        return count;
+    }
+
+    /**
+     * Check if the car can drive through a tile.
+     *
+     * @param tile Tile to check, may be null if it is not on the map
+     * @return True if the tile can be part of a path
+     */
+    static boolean isPassable(MapTile tile) {
+        return tile != null && !(tile.isType(MapTile.Type.WALL) || tile instanceof MudTrap || tile.isType(MapTile.Type.EMPTY));
+    }
+
+    /**
+     * Reconstruct the path using the parents recorded during the current search.
+     *
+     * @param current Node to start constructing path from
+     * @return Reconstructed path, from the given node back to the start of the search
+     */
+    List<Coordinate> reconstructPath(int current) {
+        List<Coordinate> path = new ArrayList<>();
+        path.add(coordinate(current));
+        while (getCameFrom(current) != NO_PARENT) {
+            current = getCameFrom(current);
+            path.add(coordinate(current));
+        }
+        return path;
+    }
+
+    /**
+     * Make sure a node's scores belong to the current search, resetting them if they are left over from an old one.
+     */
+    private void touch(int node) {
+        if (mStamps[node] != mGeneration) {
+            mStamps[node] = mGeneration;
+            mGScore[node] = UNREACHED;
+            mFScore[node] = UNREACHED;
+            mDScore[node] = UNREACHED;
+            mCameFrom[node] = NO_PARENT;
+        }
+    }
+
+    private void fitBounds(HashMap<Coordinate, MapTile> map) {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (Coordinate coordinate : map.keySet()) {
+            minX = Math.min(minX, coordinate.x);
+            minY = Math.min(minY, coordinate.y);
+            maxX = Math.max(maxX, coordinate.x);
+            maxY = Math.max(maxY, coordinate.y);
+        }
+        if (map.isEmpty()) {
+            minX = minY = 0;
+            maxX = maxY = -1;
+        }
+        if (minX != mMinX || minY != mMinY || maxX - minX + 1 != mWidth || maxY - minY + 1 != mHeight) {
+            mMinX = minX;
+            mMinY = minY;
+            mWidth = maxX - minX + 1;
+            mHeight = maxY - minY + 1;
+            int size = mWidth * mHeight;
+            mCoordinates = new Coordinate[size];
+            mGScore = new int[size];
+            mFScore = new int[size];
+            mDScore = new int[size];
+            mCameFrom = new int[size];
+            mStamps = new int[size];
+            mGeneration = 1;
+            mOpenSet.ensureCapacity(size);
+        }
+        mMap = map;
+        mMapSize = map.size();
+    }
+}
@@ -0,0 +1,240 @@
+package mycontroller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Runs several searches for the next plan at once and picks the one to follow.
+ *
+ * Each query is a search with a strategy of its own, so queries never share a workspace. They are run together on a
+ * ForkJoinPool and scored as they finish. As soon as no query still running could beat the best plan so far, the rest
+ * are cancelled, so a decision takes as long as the slowest query that could still win rather than all of them one
+ * after the other.
+ *
+ * A portfolio is used from one thread at a time, e.g. the update thread or the background planning thread.
+ */
+class StrategyPortfolio {
+    /**
+     * Score of a plan that can't be followed
+     */
+    static final long UNUSABLE = Long.MAX_VALUE;
+
+    /**
+     * Prefers the queries in the order they were added, taking the first with anywhere to go.
+     */
+    static final ScoringRule PREFERENCE_ORDER = new ScoringRule() {
+        @Override
+        public long score(Query query, Plan plan) {
+            return plan.directions.isEmpty() ? UNUSABLE : query.preference;
+        }
+
+        @Override
+        public long bestScore(Query query) {
+            return query.preference;
+        }
+    };
+
+    /**
+     * Decides which of the finished queries wins.
+     */
+    interface ScoringRule {
+        /**
+         * @param query Query that made the plan
+         * @param plan  Plan the query made
+         * @return Score of the plan, lower is better, or UNUSABLE if it can't be followed
+         */
+        long score(Query query, Plan plan);
+
+        /**
+         * Lowest score the query could get, used to cancel queries that can no longer win. Rules that can't bound
+         * their scores leave every query to finish.
+         */
+        default long bestScore(Query query) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * A search to run as part of the portfolio.
+     */
+    static class Query {
+        final String name;
+        /**
+         * Position the query was added in, starting from 0
+         */
+        final int preference;
+        /**
+         * Strategy the search runs on, which is cancelled if the query can't win, or null if it can't be stopped
+         */
+        private final SearchStrategy mStrategy;
+        private final Supplier<Plan> mSearch;
+        private Plan mPlan;
+        private Throwable mFailure;
+        /**
+         * Whether the run has scored the query, which is only looked at by the thread running the portfolio
+         */
+        private boolean mScored;
+        /**
+         * Set by the thread running the portfolio, and read by the pool thread before it starts the search
+         */
+        private volatile boolean mCancelled;
+
+        private Query(String name, int preference, SearchStrategy strategy, Supplier<Plan> search) {
+            this.name = name;
+            this.preference = preference;
+            mStrategy = strategy;
+            mSearch = search;
+        }
+
+        private void run() {
+            try {
+                mPlan = mSearch.get();
+            } catch (Throwable failure) {
+                mFailure = failure;
+            }
+        }
+
+        private void cancel() {
+            mCancelled = true;
+            if (mStrategy != null) {
+                mStrategy.cancel();
+            }
+        }
+    }
+
+    private final ForkJoinPool mPool;
+    private final ScoringRule mScoringRule;
+    private final List<Query> mQueries = new ArrayList<>();
+    /**
+     * Queries that have finished, in the order they finished
+     */
+    private final LinkedBlockingQueue<Query> mFinished = new LinkedBlockingQueue<>();
+    private Query mWinner;
+    private long mCancelledQueries;
+
+    /**
+     * @param pool        Pool the queries are run on
+     * @param scoringRule Rule deciding which plan wins
+     */
+    StrategyPortfolio(ForkJoinPool pool, ScoringRule scoringRule) {
+        mPool = pool;
+        mScoringRule = scoringRule;
+    }
+
+    /**
+     * Add a query to the next run.
+     *
+     * @param name     Name to report the query by
+     * @param strategy Strategy the search uses, which no other query of the run may use, or null if it uses none
+     * @param search   Runs the search and makes a plan from it, on a pool thread
+     */
+    void add(String name, SearchStrategy strategy, Supplier<Plan> search) {
+        mQueries.add(new Query(name, mQueries.size(), strategy, search));
+    }
+
+    /**
+     * Run the queries added since the last run and wait for the winner. Queries that can't win are cancelled, but are
+     * still waited for, so that their strategies are free to be used again once this returns.
+     *
+     * @return Plan of the winning query, or null if no query made a usable plan
+     */
+    Plan run() {
+        List<Query> queries = new ArrayList<>(mQueries);
+        mQueries.clear();
+        mWinner = null;
+        if (queries.isEmpty()) {
+            return null;
+        }
+        for (Query query : queries) {
+            if (query.mStrategy != null) {
+                query.mStrategy.resetCancelled();
+            }
+        }
+        if (queries.size() == 1) {
+            // Nothing to run alongside, so don't pay for the handover
+            Query query = queries.get(0);
+            query.run();
+            finished(queries, query);
+        } else {
+            for (Query query : queries) {
+                mPool.execute(() -> {
+                    if (!query.mCancelled) {
+                        query.run();
+                    }
+                    mFinished.add(query);
+                });
+            }
+            for (int i = 0; i < queries.size(); i++) {
+                finished(queries, takeFinished());
+            }
+        }
+
+        Throwable failure = null;
+        for (Query query : queries) {
+            if (failure == null && query.mFailure != null && !query.mCancelled) {
+                failure = query.mFailure;
+            }
+        }
+        if (failure != null) {
+            throw new RuntimeException("Query failed", failure);
+        }
+        return mWinner == null ? null : mWinner.mPlan;
+    }
+
+    /**
+     * Name of the query whose plan the last run returned, or null if there was none.
+     */
+    String getWinner() {
+        return mWinner == null ? null : mWinner.name;
+    }
+
+    /**
+     * Number of queries cancelled because they couldn't beat a plan that was already found.
+     */
+    long getCancelledQueries() {
+        return mCancelledQueries;
+    }
+
+    /**
+     * Score a query that has finished and cancel any still running that can no longer beat the best plan.
+     */
+    private void finished(List<Query> queries, Query query) {
+        query.mScored = true;
+        if (query.mCancelled || query.mFailure != null) {
+            return;
+        }
+        long score = mScoringRule.score(query, query.mPlan);
+        if (score == UNUSABLE || mWinner != null && score >= mScoringRule.score(mWinner, mWinner.mPlan)) {
+            return;
+        }
+        mWinner = query;
+        for (Query other : queries) {
+            if (!other.mScored && !other.mCancelled &&
+                    mScoringRule.bestScore(other) >= score) {
+                other.cancel();
+                mCancelledQueries++;
+            }
+        }
+    }
+
+    private Query takeFinished() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return mFinished.take();
+                } catch (InterruptedException e) {
+                    // The queries must be waited for regardless, so put the interrupt back afterwards
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package mycontroller;
+
+import tiles.HealthTrap;
+import tiles.LavaTrap;
+import tiles.MapTile;
+import utilities.Coordinate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the controller's map by the kinds of tile it looks for: unexplored tiles, the frontier between them and the
+ * explored part of the map, exits, health traps, and lava holding each key.
+ *
+ * The index is built once from the whole map and then kept up to date from the tiles that change, so each lookup
+ * costs as much as the tiles it returns rather than a scan of the map.
+ */
+class TileIndex {
+    private static final int[][] OFFSETS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+
+    private final HashMap<Coordinate, MapTile> mMap;
+    private final Set<Coordinate> mUtilities = new LinkedHashSet<>();
+    /**
+     * Unexplored tiles next to an explored tile the car could be on
+     */
+    private final Set<Coordinate> mFrontier = new LinkedHashSet<>();
+    private final Set<Coordinate> mExits = new LinkedHashSet<>();
+    private final Set<Coordinate> mHealths = new LinkedHashSet<>();
+    /**
+     * Tiles holding each key, by key number
+     */
+    private final Map<Integer, Set<Coordinate>> mKeys = new HashMap<>();
+
+    /**
+     * @param map Map to index. Changes to it must be passed to update().
+     */
+    TileIndex(HashMap<Coordinate, MapTile> map) {
+        mMap = map;
+        for (Map.Entry<Coordinate, MapTile> entry : map.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+        for (Coordinate coordinate : mUtilities) {
+            if (onFrontier(coordinate)) {
+                mFrontier.add(coordinate);
+            }
+        }
+    }
+
+    /**
+     * Re-index tiles that have changed on the map.
+     *
+     * @param changedTiles Coordinates of the tiles that have changed
+     */
+    void update(Collection<Coordinate> changedTiles) {
+        for (Coordinate coordinate : changedTiles) {
+            remove(coordinate);
+            add(coordinate, mMap.get(coordinate));
+        }
+        // A tile is on the frontier depending on its neighbours, so those of each changed tile are looked at too
+        for (Coordinate coordinate : changedTiles) {
+            updateFrontier(coordinate);
+            for (int[] offset : OFFSETS) {
+                updateFrontier(new Coordinate(coordinate.x + offset[0], coordinate.y + offset[1]));
+            }
+        }
+    }
+
+    /**
+     * All tiles that haven't been explored yet.
+     */
+    List<Coordinate> utilities() {
+        return new ArrayList<>(mUtilities);
+    }
+
+    /**
+     * Unexplored tiles that can be driven onto from an explored tile. The nearest unexplored tile to the car is always
+     * one of them, as any route to an unexplored tile enters the unexplored part of the map through the frontier.
+     */
+    List<Coordinate> frontier() {
+        return new ArrayList<>(mFrontier);
+    }
+
+    List<Coordinate> exits() {
+        return new ArrayList<>(mExits);
+    }
+
+    List<Coordinate> healths() {
+        return new ArrayList<>(mHealths);
+    }
+
+    /**
+     * Find all known tiles holding keys that have not been collected.
+     *
+     * @param keysCollected Keys the car already has
+     */
+    List<Coordinate> uncollectedKeys(Set<Integer> keysCollected) {
+        List<Coordinate> keys = new ArrayList<>();
+        for (Map.Entry<Integer, Set<Coordinate>> entry : mKeys.entrySet()) {
+            if (!keysCollected.contains(entry.getKey())) {
+                keys.addAll(entry.getValue());
+            }
+        }
+        return keys;
+    }
+
+    private void add(Coordinate coordinate, MapTile tile) {
+        if (tile == null) {
+            return;
+        }
+        if (tile.isType(MapTile.Type.UTILITY)) {
+            mUtilities.add(coordinate);
+        } else if (tile.isType(MapTile.Type.FINISH)) {
+            mExits.add(coordinate);
+        } else if (tile instanceof HealthTrap) {
+            mHealths.add(coordinate);
+        } else if (tile instanceof LavaTrap && ((LavaTrap) tile).getKey() > 0) {
+            mKeys.computeIfAbsent(((LavaTrap) tile).getKey(), key -> new LinkedHashSet<>()).add(coordinate);
+        }
+    }
+
+    private void remove(Coordinate coordinate) {
+        mUtilities.remove(coordinate);
+        mExits.remove(coordinate);
+        mHealths.remove(coordinate);
+        for (Set<Coordinate> tiles : mKeys.values()) {
+            tiles.remove(coordinate);
+        }
+    }
+
+    private void updateFrontier(Coordinate coordinate) {
+        if (mUtilities.contains(coordinate) && onFrontier(coordinate)) {
+            mFrontier.add(coordinate);
+        } else {
+            mFrontier.remove(coordinate);
+        }
+    }
+
+    /**
+     * Check if an unexplored tile is next to an explored one, other than a wall or off the map.
+     */
+    private boolean onFrontier(Coordinate coordinate) {
+        for (int[] offset : OFFSETS) {
+            MapTile neighbour = mMap.get(new Coordinate(coordinate.x + offset[0], coordinate.y + offset[1]));
+            if (neighbour != null && !neighbour.isType(MapTile.Type.UTILITY) &&
+                    !neighbour.isType(MapTile.Type.WALL) && !neighbour.isType(MapTile.Type.EMPTY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
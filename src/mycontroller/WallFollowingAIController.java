@@ -5,12 +5,10 @@ import tiles.LavaTrap;
 import tiles.MapTile;
 import tiles.MudTrap;
 import tiles.TrapTile;
-import utilities.Coordinate;
 import world.Car;
+import world.CarView;
 import world.WorldSpatial;
 
-import java.util.HashMap;
-
 /**
  * Simple AI that just follows the wall. This is based on the provided AIController class.
  */
@@ -29,7 +27,7 @@ public class WallFollowingAIController extends CarController {
 
     @Override
     public void update() {
-        HashMap<Coordinate, MapTile> currentView = getView();
+        CarView currentView = getCarView();
 
         if (getSpeed() < CAR_MAX_SPEED && getSpeed() > CAR_MAX_REVERSE_SPEED) {
 
@@ -99,7 +97,7 @@ public class WallFollowingAIController extends CarController {
      * @param currentView what the car can currently see
      * @return
      */
-    private boolean checkWallAhead(WorldSpatial.Direction orientation, HashMap<Coordinate, MapTile> currentView) {
+    private boolean checkWallAhead(WorldSpatial.Direction orientation, CarView currentView) {
         switch (orientation) {
             case EAST:
                 return checkEast(currentView);
@@ -114,7 +112,7 @@ public class WallFollowingAIController extends CarController {
         }
     }
 
-    private boolean checkWallBehind(WorldSpatial.Direction orientation, HashMap<Coordinate, MapTile> currentView) {
+    private boolean checkWallBehind(WorldSpatial.Direction orientation, CarView currentView) {
         return checkWallAhead(WorldSpatial.reverseDirection(orientation), currentView);
     }
 
@@ -125,7 +123,7 @@ public class WallFollowingAIController extends CarController {
      * @param currentView
      * @return
      */
-    private boolean checkWallLeft(WorldSpatial.Direction orientation, HashMap<Coordinate, MapTile> currentView) {
+    private boolean checkWallLeft(WorldSpatial.Direction orientation, CarView currentView) {
 
         switch (orientation) {
             case EAST:
@@ -141,7 +139,7 @@ public class WallFollowingAIController extends CarController {
         }
     }
 
-    private boolean checkWallRight(WorldSpatial.Direction orientation, HashMap<Coordinate, MapTile> currentView) {
+    private boolean checkWallRight(WorldSpatial.Direction orientation, CarView currentView) {
 
         switch (orientation) {
             case EAST:
@@ -165,11 +163,10 @@ public class WallFollowingAIController extends CarController {
      * checkNorth will check up to mWallSensitivity amount of tiles to the top.
      * checkSouth will check up to mWallSensitivity amount of tiles below.
      */
-    public boolean checkEast(HashMap<Coordinate, MapTile> currentView) {
+    public boolean checkEast(CarView currentView) {
         // Check tiles to my right
-        Coordinate currentPosition = new Coordinate(getPosition());
         for (int i = 0; i <= mWallSensitivity; i++) {
-            MapTile tile = currentView.get(new Coordinate(currentPosition.x + i, currentPosition.y));
+            MapTile tile = currentView.tileAtOffset(i, 0);
             if (tile.isType(MapTile.Type.WALL) || tile instanceof  MudTrap) {
                 return true;
             }
@@ -177,11 +174,10 @@ public class WallFollowingAIController extends CarController {
         return false;
     }
 
-    public boolean checkWest(HashMap<Coordinate, MapTile> currentView) {
+    public boolean checkWest(CarView currentView) {
         // Check tiles to my left
-        Coordinate currentPosition = new Coordinate(getPosition());
         for (int i = 0; i <= mWallSensitivity; i++) {
-            MapTile tile = currentView.get(new Coordinate(currentPosition.x - i, currentPosition.y));
+            MapTile tile = currentView.tileAtOffset(-i, 0);
             if (tile.isType(MapTile.Type.WALL) || tile instanceof  MudTrap) {
                 return true;
             }
@@ -189,11 +185,10 @@ public class WallFollowingAIController extends CarController {
         return false;
     }
 
-    public boolean checkNorth(HashMap<Coordinate, MapTile> currentView) {
+    public boolean checkNorth(CarView currentView) {
         // Check tiles to towards the top
-        Coordinate currentPosition = new Coordinate(getPosition());
         for (int i = 0; i <= mWallSensitivity; i++) {
-            MapTile tile = currentView.get(new Coordinate(currentPosition.x, currentPosition.y + i));
+            MapTile tile = currentView.tileAtOffset(0, i);
             if (tile.isType(MapTile.Type.WALL) || tile instanceof  MudTrap) {
                 return true;
             }
@@ -201,11 +196,10 @@ public class WallFollowingAIController extends CarController {
         return false;
     }
 
-    public boolean checkSouth(HashMap<Coordinate, MapTile> currentView) {
+    public boolean checkSouth(CarView currentView) {
         // Check tiles towards the bottom
-        Coordinate currentPosition = new Coordinate(getPosition());
         for (int i = 0; i <= mWallSensitivity; i++) {
-            MapTile tile = currentView.get(new Coordinate(currentPosition.x, currentPosition.y - i));
+            MapTile tile = currentView.tileAtOffset(0, -i);
             if (tile.isType(MapTile.Type.WALL) || tile instanceof  MudTrap) {
                 return true;
             }
@@ -219,7 +213,7 @@ public class WallFollowingAIController extends CarController {
      * @param currentView
      *
      */
-    public void attachToWall(HashMap<Coordinate, MapTile> currentView) {
+    public void attachToWall(CarView currentView) {
         boolean left = checkWallLeft(getOrientation(), currentView);
         boolean right = checkWallRight(getOrientation(), currentView);
         boolean ahead = checkWallAhead(getOrientation(), currentView);
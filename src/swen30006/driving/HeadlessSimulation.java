@@ -0,0 +1,215 @@
+package swen30006.driving;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import world.Car;
+import world.CompiledMap;
+import world.GeneratedMap;
+import world.MapGenerator;
+import world.TmxMapReader;
+import world.World;
+
+/**
+ * Runs the simulation without a window, GL context or frame timing, for evaluating controllers on machines with no
+ * display. Each map is loaded without libGDX and World.update() is called as fast as it will go until the game
+ * ends or the tick limit is reached.
+ *
+ *     java swen30006.driving.HeadlessSimulation [-controller class] [-ticks limit] [-rate ticks/s] [-quiet] map.tmx ...
+ *
+ * TMX maps are loaded through CompiledMap, which compiles each map the first time and whenever it changes. A map
+ * given as gen:WxH:seed is made by MapGenerator in memory rather than read, and a .cmap file is used as it is.
+ *
+ * -rate paces the updates instead, as the game does at two ticks a second per RunSpeed, or at any rate in between
+ * turbo's. A controller that plans in the background only keeps up when the planning thread gets the time between
+ * ticks; run as fast as they go, its plans take many ticks to make.
+ *
+ * One line is printed per map with the result, ticks, health, keys, wall time, and the 99th percentile and longest
+ * wall time of one update, including searches the controller runs on other threads while the update waits. Then
+ * come the number of updates that took longer than SLOW_UPDATE_NANOS, and the number of searches the controller
+ * reports as having run past their time budget, which leaves out any work the budget doesn't cover. -quiet hides
+ * everything else the simulation and controller print. The exit status is 1 if any map was not won, so scripts can
+ * tell whether a controller escaped every map.
+ */
+public class HeadlessSimulation {
+
+	private static final String DEFAULT_CONTROLLER = "mycontroller.MyAIController";
+	private static final int DEFAULT_TICK_LIMIT = 10000;
+	// Car.update() always steps by this much, whatever it is given
+	private static final float TIME_STEP = 0.25f;
+	// MyAIController's search budget, which an update that only searches within it stays under
+	private static final long SLOW_UPDATE_NANOS = 4000000;
+
+	/**
+	 * Outcome of driving one map
+	 */
+	public static class Result {
+		public final String map;
+		public final boolean ended;
+		public final boolean won;
+		public final int ticks;
+		public final float health;
+		public final List<Integer> keys;
+		public final int numKeys;
+		public final long wallNanos;
+		public final long p99UpdateNanos;
+		public final long maxUpdateNanos;
+		public final int slowUpdates;
+		public final long budgetOverruns;
+
+		Result(String map, boolean ended, boolean won, int ticks, World world, long wallNanos, long[] updateNanos) {
+			Car car = world.getCar();
+			this.map = map;
+			this.ended = ended;
+			this.won = won;
+			this.ticks = ticks;
+			this.health = car.getHealth();
+			this.keys = car.getKeys().stream().sorted().collect(Collectors.toList());
+			this.numKeys = car.numKeys;
+			this.wallNanos = wallNanos;
+			Arrays.sort(updateNanos);
+			this.p99UpdateNanos = updateNanos.length == 0 ? 0 : updateNanos[updateNanos.length * 99 / 100];
+			this.maxUpdateNanos = updateNanos.length == 0 ? 0 : updateNanos[updateNanos.length - 1];
+			int slow = 0;
+			for (long nanos : updateNanos) {
+				if (nanos > SLOW_UPDATE_NANOS) slow++;
+			}
+			this.slowUpdates = slow;
+			this.budgetOverruns = world.getController().getBudgetOverruns();
+		}
+
+		public String getOutcome() {
+			return !ended ? "TIMEOUT" : won ? "WON" : "LOST";
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-32s %-8s %8d %8.1f %12s %10.1f %8.2f %8.2f %6d %9d", map, getOutcome(), ticks,
+					health, keys.stream().map(String::valueOf).collect(Collectors.joining(",", "{", "}")) + "/" + numKeys,
+					wallNanos / 1e6, p99UpdateNanos / 1e6, maxUpdateNanos / 1e6, slowUpdates, budgetOverruns);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String controllerName = DEFAULT_CONTROLLER;
+		int tickLimit = DEFAULT_TICK_LIMIT;
+		int tickRate = 0;
+		boolean quiet = false;
+		List<String> maps = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-controller") && i + 1 < args.length) {
+				controllerName = args[++i];
+			} else if (args[i].equals("-ticks") && i + 1 < args.length) {
+				tickLimit = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-rate") && i + 1 < args.length) {
+				tickRate = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-quiet")) {
+				quiet = true;
+			} else {
+				maps.add(args[i]);
+			}
+		}
+		if (maps.isEmpty()) {
+			System.err.println("Usage: HeadlessSimulation [-controller class] [-ticks limit] [-rate ticks/s] [-quiet] "
+					+ "map.tmx ...");
+			System.exit(2);
+		}
+
+		PrintStream out = System.out;
+		if (quiet) {
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			}));
+		}
+		out.println(String.format("%-32s %-8s %8s %8s %12s %10s %8s %8s %6s %9s", "map", "result", "ticks", "health",
+				"keys", "ms", "p99 ms", "max ms", "slow", "overruns"));
+		boolean allWon = true;
+		for (String map : maps) {
+			Result result = run(loadMap(map), map, controllerName, tickLimit, tickRate);
+			out.println(result);
+			allWon &= result.won;
+		}
+		System.exit(allWon ? 0 : 1);
+	}
+
+	/**
+	 * Load a map, or generate it if it is given as gen:WxH:seed, once for any number of worlds to be built on it.
+	 * @return Builds a world on the map for a controller class name
+	 */
+	public static Function<String,World> loadMap(String map) throws IOException {
+		if (map.startsWith(MapGenerator.SPEC_PREFIX)) {
+			GeneratedMap generated = MapGenerator.fromSpec(map);
+			return controllerName -> new World(generated, controllerName);
+		}
+		CompiledMap compiled = map.endsWith(CompiledMap.EXTENSION) ? CompiledMap.map(new File(map))
+				: CompiledMap.load(map);
+		return controllerName -> new World(compiled, controllerName);
+	}
+
+	/**
+	 * Drive one map until the game ends or the tick limit is reached.
+	 * @param reader Map to drive on
+	 * @param mapName Name to report the map by
+	 * @param controllerName Class name of the controller to drive with
+	 * @param tickLimit Most updates to run before giving up
+	 */
+	public static Result run(TmxMapReader reader, String mapName, String controllerName, int tickLimit) {
+		return run(controller -> new World(reader, controller), mapName, controllerName, tickLimit);
+	}
+
+	/**
+	 * Drive a map until the game ends or the tick limit is reached.
+	 * @param worlds Builds a world on the map for a controller class name
+	 * @param mapName Name to report the map by
+	 * @param controllerName Class name of the controller to drive with
+	 * @param tickLimit Most updates to run before giving up
+	 */
+	public static Result run(Function<String,World> worlds, String mapName, String controllerName, int tickLimit) {
+		return run(worlds, mapName, controllerName, tickLimit, 0);
+	}
+
+	/**
+	 * Drive a map until the game ends or the tick limit is reached.
+	 * @param worlds Builds a world on the map for a controller class name
+	 * @param mapName Name to report the map by
+	 * @param controllerName Class name of the controller to drive with
+	 * @param tickLimit Most updates to run before giving up
+	 * @param tickRate Updates to run a second, or 0 to run them as fast as they go
+	 */
+	public static Result run(Function<String,World> worlds, String mapName, String controllerName, int tickLimit,
+			int tickRate) {
+		long startTime = System.nanoTime();
+		World world = worlds.apply(controllerName);
+		long[] updateNanos = new long[tickLimit];
+		long paceStart = System.nanoTime();
+		int ticks = 0;
+		while (!world.isGameEnded() && ticks < tickLimit) {
+			long updateStart = System.nanoTime();
+			world.update(TIME_STEP);
+			updateNanos[ticks] = System.nanoTime() - updateStart;
+			ticks++;
+			if (tickRate > 0) {
+				long wait = paceStart + ticks * 1000000000L / tickRate - System.nanoTime();
+				if (wait > 0) {
+					try {
+						Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+			}
+		}
+		return new Result(mapName, world.isGameEnded(), world.isGameWon(), ticks, world,
+				System.nanoTime() - startTime, Arrays.copyOf(updateNanos, ticks));
+	}
+}
@@ -12,6 +12,10 @@ import controller.CarController;
 import mycontroller.MyAIController;
 import utilities.Coordinate;
 import world.Car;
+import world.CarView;
+
+import java.util.BitSet;
+import java.util.List;
 
 import static com.badlogic.gdx.graphics.g2d.Batch.*;
 import static com.badlogic.gdx.graphics.g2d.Batch.U2;
@@ -20,11 +24,45 @@ import static com.badlogic.gdx.graphics.g2d.Batch.U3;
 public class MyMapRenderer extends OrthogonalTiledMapRenderer {
     private Car mCar;
     private CarController mController;
+    /**
+     * Tiles the car can see this frame, as an inclusive rectangle
+     */
+    private int mViewMinCol, mViewMaxCol, mViewMinRow, mViewMaxRow;
+    /**
+     * Tiles on the controller's path this frame, indexed by row * mMapWidth + col
+     */
+    private final BitSet mPathTiles = new BitSet();
+    private final int mMapWidth;
 
     public MyMapRenderer(TiledMap map, float unitScale, Car car, CarController controller) {
         super(map, unitScale);
         mCar = car;
         mController = controller;
+        mMapWidth = car.getMapWidth();
+    }
+
+    /**
+     * Work out once per frame which tiles are in the car's view and on the controller's path, rather than for every
+     * tile of every layer.
+     */
+    @Override
+    protected void beginRender() {
+        super.beginRender();
+        CarView view = mCar.getCarView();
+        mViewMinCol = view.getCentreX() - view.getViewSquare();
+        mViewMaxCol = view.getCentreX() + view.getViewSquare();
+        mViewMinRow = view.getCentreY() - view.getViewSquare();
+        mViewMaxRow = view.getCentreY() + view.getViewSquare();
+
+        mPathTiles.clear();
+        if (mController instanceof MyAIController) {
+            List<Coordinate> path = ((MyAIController) mController).getPath();
+            for (Coordinate coordinate : path) {
+                if (coordinate.x >= 0 && coordinate.x < mMapWidth && coordinate.y >= 0) {
+                    mPathTiles.set(coordinate.y * mMapWidth + coordinate.x);
+                }
+            }
+        }
     }
 
     @Override
@@ -188,13 +226,10 @@ public class MyMapRenderer extends OrthogonalTiledMapRenderer {
     }
 
     private boolean onControllerPath(int row, int col) {
-        if (mController instanceof MyAIController) {
-            return ((MyAIController) mController).getPath().contains(new Coordinate(col, row));
-        }
-        return false;
+        return mPathTiles.get(row * mMapWidth + col);
     }
 
     private boolean withinCarView(int row, int col) {
-        return mCar.getView().keySet().contains(new Coordinate(col, row));
+        return col >= mViewMinCol && col <= mViewMaxCol && row >= mViewMinRow && row <= mViewMaxRow;
     }
 }
@@ -47,14 +47,19 @@ public class Simulation extends ApplicationAdapter implements InputProcessor {
 	private enum CameraMode {WORLD, PLAYER};
 	private static CameraMode CAMERA_MODE = CameraMode.WORLD;
 	private static final int PLAYER_VIEW = 11;
-	private static boolean gameEnded = false;
-	private static boolean gameWon = false;
 	public static boolean DEBUG_MODE = false;
 	private BitmapFont font;
 
 	private CarController controller;
 	
 	private static float TIME_STEP; // = 1/45f;
+	// Turbo mode runs as many ticks each frame as fit in the frame budget, whatever the time between frames
+	private static boolean TURBO = false;
+	private static long FRAME_BUDGET_NANOS;
+	private long ticks = 0;
+	private long tickRateStart = 0;
+	private long tickRateTicks = 0;
+	private float ticksPerSecond = 0;
 	
 	public Simulation(String[] arg) {
 		super();
@@ -74,6 +79,8 @@ public class Simulation extends ApplicationAdapter implements InputProcessor {
 		drivingProperties.setProperty("Map", "lecture-preview.tmx");
 		drivingProperties.setProperty("RunSpeed", "2");
 		drivingProperties.setProperty("Controller", "controller.ManualController");
+		drivingProperties.setProperty("Turbo", "false");
+		drivingProperties.setProperty("FrameBudget", "12");
 		
 		try (FileReader inStream = new FileReader("Driving.Properties")) {
 			drivingProperties.load(inStream);
@@ -92,6 +99,8 @@ public class Simulation extends ApplicationAdapter implements InputProcessor {
 			runSpeed = 8;
 		}
 		TIME_STEP = (1/2f) / runSpeed;
+		TURBO = Boolean.parseBoolean(drivingProperties.getProperty("Turbo").trim());
+		FRAME_BUDGET_NANOS = Math.max(1, Long.parseLong(drivingProperties.getProperty("FrameBudget").trim())) * 1000000L;
 		
 		String controllerName = drivingProperties.getProperty("Controller");
 
@@ -112,7 +121,7 @@ public class Simulation extends ApplicationAdapter implements InputProcessor {
 
 		// Set the camera
 		camera = new OrthographicCamera();
-		camera.setToOrtho(false,World.MAP_WIDTH,World.MAP_HEIGHT);
+		camera.setToOrtho(false,world.getWidth(),world.getHeight());
 		camera.update();
 		
 		// Define scale per unit
@@ -128,6 +137,25 @@ public class Simulation extends ApplicationAdapter implements InputProcessor {
 		
 	@Override
 	public void render () {
+		// Step the world first, so the frame shows the state it ends on
+		if (TURBO) {
+			// Car.update() steps by the same amount however it is called, so the ticks are the same as at any run
+			// speed and only how many are shown changes
+			long frameStart = System.nanoTime();
+			do {
+				tick();
+			} while (!world.isGameEnded() && System.nanoTime() - frameStart < FRAME_BUDGET_NANOS);
+		} else {
+			float frameTime = Math.min(Gdx.graphics.getDeltaTime(), 0.25f);
+
+			accumulator += frameTime;
+			while (accumulator >= TIME_STEP) {
+				accumulator -= TIME_STEP;
+				tick();
+			}
+		}
+		updateTickRate();
+
 		Gdx.gl.glClearColor(1, 0, 0, 1);
 		Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 
@@ -138,14 +166,6 @@ public class Simulation extends ApplicationAdapter implements InputProcessor {
 		world.render(tiledMapRenderer.getBatch());
 		tiledMapRenderer.getBatch().end();
 		
-		float frameTime = Math.min(Gdx.graphics.getDeltaTime(), 0.25f);
-
-	    accumulator += frameTime;
-	    while (accumulator >= TIME_STEP) {
-	        accumulator -= TIME_STEP;
-	        world.update(TIME_STEP);
-	    }
-		
 		if(CAMERA_MODE.equals(CameraMode.PLAYER)){
 			followCar();
 		}
@@ -156,7 +176,7 @@ public class Simulation extends ApplicationAdapter implements InputProcessor {
 		
 		String key = "K{"+world.getCar().getKeys().stream().map(s->s.toString()).collect(Collectors.joining(","))+"}";
 		String health = "H"+Integer.toString(Math.round(world.getCar().getHealth()));
-		String status = health+"/"+key;
+		String status = health+"/"+key+"  T"+ticks+" "+Math.round(ticksPerSecond)+"/s"+(TURBO ? " TURBO" : "");
 		font.getData().setScale(1.5f);
 		int offset = 1;
 		//Relative to screen size.
@@ -164,17 +184,17 @@ public class Simulation extends ApplicationAdapter implements InputProcessor {
 		font.setColor(Color.GREEN);
 		
 		//If we win or lose!
-		if(gameEnded){
+		if(world.isGameEnded()){
 			font.getData().setScale(5f);
-			String winText = gameWon ? "You WIN!" : "You LOSE!";
-			font.setColor(gameWon ? Color.GREEN : Color.RED);
+			String winText = world.isGameWon() ? "You WIN!" : "You LOSE!";
+			font.setColor(world.isGameWon() ? Color.GREEN : Color.RED);
 			final GlyphLayout layout = new GlyphLayout(font, winText);
 
 			final float fontX = 0 + (Gdx.graphics.getWidth() - layout.width) / 2;
 			final float fontY = 0 + (Gdx.graphics.getHeight() + layout.height) / 2;
 
 			font.draw(batch, layout, fontX, fontY);
-			String timeText = gameWon ? "You escaped and it took: " : "You failed and it took: ";
+			String timeText = world.isGameWon() ? "You escaped and it took: " : "You failed and it took: ";
 			System.out.println(timeText + ((System.currentTimeMillis() - startTime) / 1000+" seconds!"));
 			batch.end();
 			Gdx.app.exit();
@@ -211,8 +231,8 @@ public class Simulation extends ApplicationAdapter implements InputProcessor {
 		}
 		if(keycode == Input.Keys.Z){
 			
-			camera.viewportWidth = World.MAP_WIDTH;
-			camera.viewportHeight = World.MAP_HEIGHT;
+			camera.viewportWidth = world.getWidth();
+			camera.viewportHeight = world.getHeight();
 			camera.position.set(0,0,0);
 			CAMERA_MODE = CameraMode.WORLD;
 		}
@@ -259,6 +279,26 @@ public class Simulation extends ApplicationAdapter implements InputProcessor {
 		return false;
 	}
 	
+	private void tick() {
+		world.update(TIME_STEP);
+		ticks++;
+	}
+
+	/**
+	 * Work out the ticks per second over about the last second, for the HUD.
+	 */
+	private void updateTickRate() {
+		long now = System.nanoTime();
+		if (tickRateStart == 0) {
+			tickRateStart = now;
+			tickRateTicks = ticks;
+		} else if (now - tickRateStart >= 1000000000L) {
+			ticksPerSecond = (ticks - tickRateTicks) * 1e9f / (now - tickRateStart);
+			tickRateStart = now;
+			tickRateTicks = ticks;
+		}
+	}
+
 	public void followCar(){
 		
 		float carXPosition = world.getCar().getX();
@@ -267,11 +307,6 @@ public class Simulation extends ApplicationAdapter implements InputProcessor {
 		camera.position.set(carXPosition, carYPosition, 0);
 	}
 	
-	public static void endGame(boolean won){
-		gameEnded = true;
-		gameWon = won;
-	}
-
 	public static void resetKeys() {
 		keys = new HashSet<>();
 	}
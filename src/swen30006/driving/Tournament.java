@@ -0,0 +1,202 @@
+package swen30006.driving;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import world.MapGenerator;
+import world.World;
+
+/**
+ * Runs every controller on every map several times over, headless and in parallel, and prints one table of how each
+ * controller did on each map.
+ *
+ *     java swen30006.driving.Tournament [-controllers a,b,...] [-seeds n] [-runs n] [-threads n] [-ticks limit]
+ *                                       [-quiet] map.tmx ...
+ *
+ * Each run has a World of its own, so runs share nothing but the maps, which are read once and only read from after.
+ * Maps given as gen:WxH:seed are generated, and each run's World gets traps of its own. -seeds turns each of them
+ * into that many maps, with the seeds counting up from the one given, and reports them in one row; other maps have
+ * no seed and are run as they are.
+ * The simulation has no randomness, so -runs is the number of times each controller is run on each map, which
+ * evens out timing noise; the outcomes of the runs of a pair only differ for controllers that plan in the background.
+ * The table ends with the wall time of the whole tournament and its throughput; comparing runs/s with that of
+ * -threads 1 shows how it scales. Runs that share a processor take longer each, so ms/run only compares controllers
+ * within one tournament.
+ */
+public class Tournament {
+
+	private static final String DEFAULT_CONTROLLER = "mycontroller.MyAIController";
+	private static final int DEFAULT_TICK_LIMIT = 10000;
+
+	/**
+	 * Results of the runs of one controller on one map
+	 */
+	private static class Entry {
+		final String controller;
+		final String map;
+		int runs;
+		int wins;
+		int failures;
+		long ticks;
+		double health;
+		long wallNanos;
+
+		Entry(String controller, String map) {
+			this.controller = controller;
+			this.map = map;
+		}
+
+		void add(HeadlessSimulation.Result result) {
+			runs++;
+			if (result.won) wins++;
+			ticks += result.ticks;
+			health += result.health;
+			wallNanos += result.wallNanos;
+		}
+
+		@Override
+		public String toString() {
+			int finished = runs - failures;
+			return String.format("%-36s %-28s %5d %5d %6.1f%% %8.1f %8.1f %10.1f", controller, map, runs, wins,
+					100.0 * wins / runs, finished == 0 ? 0 : (double) ticks / finished,
+					finished == 0 ? 0 : health / finished, finished == 0 ? 0 : wallNanos / 1e6 / finished);
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		List<String> controllers = new ArrayList<String>();
+		int seeds = 1;
+		int repeats = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int tickLimit = DEFAULT_TICK_LIMIT;
+		boolean quiet = false;
+		List<String> maps = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-controllers") && i + 1 < args.length) {
+				controllers.addAll(Arrays.asList(args[++i].split(",")));
+			} else if (args[i].equals("-seeds") && i + 1 < args.length) {
+				seeds = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-runs") && i + 1 < args.length) {
+				repeats = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-ticks") && i + 1 < args.length) {
+				tickLimit = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-quiet")) {
+				quiet = true;
+			} else {
+				maps.add(args[i]);
+			}
+		}
+		if (maps.isEmpty() || seeds < 1 || repeats < 1 || threads < 1) {
+			System.err.println("Usage: Tournament [-controllers a,b,...] [-seeds n] [-runs n] [-threads n] [-ticks limit] "
+					+ "[-quiet] map.tmx ...");
+			System.exit(2);
+		}
+		if (controllers.isEmpty()) {
+			controllers.add(DEFAULT_CONTROLLER);
+		}
+
+		PrintStream out = System.out;
+		if (quiet) {
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			}));
+		}
+
+		// The maps each row is run on, by the row's name
+		Map<String,List<String>> rows = new LinkedHashMap<String,List<String>>();
+		Map<String,Function<String,World>> readers = new LinkedHashMap<String,Function<String,World>>();
+		for (String map : maps) {
+			List<String> seeded = seeded(map, seeds);
+			String last = seeded.get(seeded.size() - 1);
+			rows.put(seeded.size() == 1 ? map : seeded.get(0) + ".." + last.substring(last.lastIndexOf(':') + 1),
+					seeded);
+			for (String seed : seeded) {
+				readers.put(seed, HeadlessSimulation.loadMap(seed));
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Map<Entry,List<Future<HeadlessSimulation.Result>>> runs = new LinkedHashMap<Entry,List<Future<HeadlessSimulation.Result>>>();
+		long startTime = System.nanoTime();
+		for (String controller : controllers) {
+			for (Map.Entry<String,List<String>> row : rows.entrySet()) {
+				Entry entry = new Entry(controller, row.getKey());
+				List<Future<HeadlessSimulation.Result>> futures = new ArrayList<Future<HeadlessSimulation.Result>>();
+				for (String map : row.getValue()) {
+					for (int repeat = 0; repeat < repeats; repeat++) {
+						final int limit = tickLimit;
+						futures.add(executor.submit(() ->
+								HeadlessSimulation.run(readers.get(map), map, controller, limit)));
+					}
+				}
+				runs.put(entry, futures);
+			}
+		}
+		executor.shutdown();
+
+		long runNanos = 0;
+		for (Map.Entry<Entry,List<Future<HeadlessSimulation.Result>>> run : runs.entrySet()) {
+			Entry entry = run.getKey();
+			for (Future<HeadlessSimulation.Result> future : run.getValue()) {
+				try {
+					HeadlessSimulation.Result result = future.get();
+					entry.add(result);
+					runNanos += result.wallNanos;
+				} catch (ExecutionException e) {
+					entry.runs++;
+					entry.failures++;
+					System.err.println(entry.controller + " failed on " + entry.map + ":");
+					e.getCause().printStackTrace();
+				}
+			}
+		}
+		long wallNanos = System.nanoTime() - startTime;
+
+		out.println(String.format("%-36s %-28s %5s %5s %7s %8s %8s %10s", "controller", "map", "runs", "won", "won%",
+				"ticks", "health", "ms/run"));
+		boolean allWon = true;
+		int total = 0;
+		for (Entry entry : runs.keySet()) {
+			out.println(entry);
+			allWon &= entry.wins == entry.runs;
+			total += entry.runs;
+		}
+		out.println(String.format("%d runs on %d threads in %.1f ms, %.1f runs/s, %.2f runs at once on average",
+				total, threads, wallNanos / 1e6, total / (wallNanos / 1e9), (double) runNanos / wallNanos));
+		System.exit(allWon ? 0 : 1);
+	}
+
+	/**
+	 * The maps to run for one given on the command line: a generated map with each of the seeds from its own on, or
+	 * the map itself.
+	 */
+	private static List<String> seeded(String map, int seeds) {
+		List<String> seeded = new ArrayList<String>();
+		if (!map.startsWith(MapGenerator.SPEC_PREFIX) || seeds == 1) {
+			seeded.add(map);
+			return seeded;
+		}
+		int colon = map.indexOf(':', MapGenerator.SPEC_PREFIX.length());
+		String size = colon < 0 ? map : map.substring(0, colon);
+		long first = colon < 0 ? 0 : Long.parseLong(map.substring(colon + 1));
+		for (int i = 0; i < seeds; i++) {
+			seeded.add(size + ":" + (first + i));
+		}
+		return seeded;
+	}
+}
@@ -5,6 +5,16 @@ import world.Car;
 public class LavaTrap extends TrapTile {
 	public static final int HealthDelta = 20;
 	private int key = 0;
+
+	public LavaTrap() {
+	}
+
+	/**
+	 * Lava holding a key, without announcing it as setKey() does, for a trap made again after it was first loaded.
+	 */
+	public LavaTrap(int key) {
+		this.key = key;
+	}
 	
 	public String getTrap() { return "lava"; }
 
@@ -12,11 +12,30 @@ public class MapTile {
 	public enum Type {WALL, UTILITY, TRAP, EMPTY, ROAD, START, FINISH};
 
 	protected Type tileType;
+
+	private static final MapTile[] SHARED = new MapTile[Type.values().length];
+	static {
+		for (Type type : Type.values()) {
+			if (type != Type.TRAP) SHARED[type.ordinal()] = new MapTile(type);
+		}
+	}
 	
 	public MapTile(Type tileType) {
 		this.tileType = tileType;
 	}
 
+	/**
+	 * Tile shared by every cell of the given type. Plain tiles hold nothing but their type, so one instance of each
+	 * can stand in for all of them. Traps have state of their own and have no shared tile.
+	 * @param tileType Type of the tile, anything but TRAP
+	 */
+	public static MapTile shared(Type tileType) {
+		if (tileType == Type.TRAP) {
+			throw new IllegalArgumentException("Traps can't be shared");
+		}
+		return SHARED[tileType.ordinal()];
+	}
+
 	public Type getType() {
 		return tileType;
 	}
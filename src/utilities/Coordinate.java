@@ -1,7 +1,5 @@
 package utilities;
 
-import java.util.Objects;
-
 public class Coordinate {
 	public int x;
 	public int y;
@@ -51,6 +49,8 @@ public class Coordinate {
 	}
 	
 	public int hashCode(){
-		return Objects.hash(x,y);
+		// Distinct for every cell of a map up to 65521 tiles high. Objects.hash(x,y) gives 31 * x + y, which a
+		// 4096x4096 map shares between about 128 cells each, filling HashMap bins with collisions.
+		return x * 65521 + y;
 	}
 }
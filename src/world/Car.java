@@ -1,6 +1,7 @@
 package world;
 
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.HashSet;
@@ -57,13 +58,16 @@ public class Car extends Sprite{
 
 	public final int numKeys; // The number of keys we need to find
 	private Set<Integer> keys = new HashSet<>();  // Once the set is complete, we can exit
+	private final CarView view = new CarView(this);
+	private final World world;
 
-	Car(Sprite sprite, int numKeys){
+	Car(Sprite sprite, int numKeys, World world){
 		super(sprite);
 		this.numKeys = numKeys;
+		this.world = world;
 		resetControls();
 		health = MAX_HEALTH;
-		if (World.getStart() == null) {
+		if (world.getStart() == null) {
 			try {
 				throw new NoStartLocationException();
 			} catch (NoStartLocationException e) {
@@ -71,8 +75,8 @@ public class Car extends Sprite{
 			}
 		} else {
 			// System.out.println("Start - Coord: "+World.getStart());
-			setX(World.getCarStart().x);
-			setY(World.getCarStart().y);
+			setX(world.getCarStart().x);
+			setY(world.getCarStart().y);
 		}
 		// CAR_WIDTH = (int) sprite.getWidth();
 		// CAR_HEIGHT = (int) sprite.getHeight();
@@ -86,7 +90,7 @@ public class Car extends Sprite{
 			}
 			// logger.info("accelerating: %5s; turning: %5s", accelerating, turning);
 			// Get the current tile
-			MapTile currentTile = World.lookUp(getX(), getY());
+			MapTile currentTile = world.lookUp(getX(), getY());
 			MapTile.Type currentType = currentTile.getType();
 			
 			/* Check if end of simulation condition met */
@@ -96,7 +100,7 @@ public class Car extends Sprite{
 			}
 			// Made it to finish with the last key? You win!!!
 			if(MapTile.Type.FINISH == currentType && hasAllKeys()) {
-				Simulation.endGame(true);
+				world.endGame(true);
 			}
 			// Can't move? You lose!
 			if((velocity < VELOCITY_EPSILON) && MapTile.Type.TRAP == currentType && !((TrapTile) currentTile).canAccelerate()){
@@ -105,13 +109,14 @@ public class Car extends Sprite{
 			
 			/* Update this car */
 			
-			applySteering(delta);
+			// The car stays on currentTile until applyVelocity() moves it, so it is only looked up once
+			applySteering(currentTile, delta);
 			setRotation(WorldSpatial.rotation(currentOrientation));
 
 			// Apply the acceleration to velocity
-			applyAcceleration(delta);
+			applyAcceleration(currentTile, delta);
 
-			applyVelocity(delta);
+			applyVelocity(currentTile, delta);
 
 
 			resetControls();
@@ -119,7 +124,7 @@ public class Car extends Sprite{
 
 	private void lose(String message) {
 		System.out.println(message);
-		Simulation.endGame(false); // You lose!
+		world.endGame(false); // You lose!
 	}
 	
 	public void reduceHealth(float damage) {
@@ -159,9 +164,8 @@ public class Car extends Sprite{
 		turning = Optional.of(RelativeDirection.RIGHT);
 	}
 
-	private void applySteering(float delta){
+	private void applySteering(MapTile currentTile, float delta){
 		// Can't steer if you are on certain traps!
-		MapTile currentTile = World.lookUp(getX(), getY());
 		if (turning.isPresent() &&
 				velocity != 0 &&
 				Math.abs(velocity) <= MAX_TURNING &&
@@ -177,9 +181,8 @@ public class Car extends Sprite{
 //				getVelocity(), currentOrientation, getPosition(), turning);
 	}
 
-	private void applyAcceleration(float delta) {
+	private void applyAcceleration(MapTile currentTile, float delta) {
 		// Can't accelerate if you are on certain traps!
-		MapTile currentTile = World.lookUp(getX(), getY());
 		if (accelerating.isPresent() && (!currentTile.isType(MapTile.Type.TRAP) || ((TrapTile) currentTile).canAccelerate())) {
 			if (accelerating.get() == Acceleration.FORWARD) {
 				if (velocity < 0) {
@@ -205,9 +208,8 @@ public class Car extends Sprite{
 //				getVelocity(), currentOrientation, getPosition(), accelerating);
 	}
 
-	private void applyVelocity(float delta) {
+	private void applyVelocity(MapTile currentTile, float delta) {
 		if (velocity == 0) {
-			MapTile currentTile = World.lookUp(getX(), getY());
 			// Check if you are standing on a trap!
 			if (currentTile.isType(MapTile.Type.TRAP)) {
 					((TrapTile) currentTile).applyTo(this, delta);
@@ -226,7 +228,7 @@ public class Car extends Sprite{
 		for (int i = 0; i < nSteps; i++) {
 			nextx = getX()+dd.x;
 			nexty = getY()+dd.y;
-			nextTile = World.lookUp(nextx, nexty);
+			nextTile = world.lookUp(nextx, nexty);
 			if (nextTile.isType(MapTile.Type.WALL)) {
 				reduceHealth(WALL_DAMAGE*(nSteps-i));
 				velocity /= -2; // Bounce back at half speed
@@ -282,7 +284,7 @@ public class Car extends Sprite{
 
 	// Debug mode for the car
 	public void printDebug(){
-		MapTile tile = World.lookUp(getX(), getY());
+		MapTile tile = world.lookUp(getX(), getY());
 		MapTile.Type tileType = tile.getType();
 		String trapType = (tileType == MapTile.Type.TRAP ? "("+((TrapTile) tile).getTrap()+")":"");
 		logger.info("Speed: %5.1f; Angle: %6s; Position: %5s; Key: %6s; Health: %5.1f; Tile: %s%s",
@@ -290,18 +292,41 @@ public class Car extends Sprite{
 		System.out.printf("Car location: (%5.2f, %5.2f)%n", getX(), getY());
 	}
 
+	/**
+	 * The view as a new map from coordinates to tiles. getCarView() reads the same tiles without copying them.
+	 */
 	public HashMap<Coordinate,MapTile> getView(){
-		int currentX = Math.round(getX());
-		int currentY = Math.round(getY());
-
-		HashMap<Coordinate,MapTile> subMap = new HashMap<Coordinate,MapTile>();
-		for(int x = currentX - VIEW_SQUARE; x <= currentX+VIEW_SQUARE; x++){
-			for(int y = currentY - VIEW_SQUARE; y <= currentY+VIEW_SQUARE; y++){
-				MapTile tile = World.lookUp(x,y);
-				subMap.put(new Coordinate(x,y),tile);
-			}
-		}
-		return subMap;
+		return view.toMap();
+	}
+
+	public CarView getCarView(){
+		return view;
+	}
+
+	/**
+	 * The map of the world the car is in, with traps hidden, as a read-only view.
+	 */
+	public Map<Coordinate,MapTile> getMap(){
+		return world.getMap();
+	}
+
+	/**
+	 * Tile at a cell of the map of the world the car is in, as getMap() gives it, without making a Coordinate.
+	 */
+	public MapTile getMapTile(int x, int y){
+		return world.getMapTile(x, y);
+	}
+
+	public int getMapWidth(){
+		return world.getWidth();
+	}
+
+	public int getMapHeight(){
+		return world.getHeight();
+	}
+
+	MapTile lookUp(double x, double y){
+		return world.lookUp(x, y);
 	}
 
 	public String getPosition(){
@@ -0,0 +1,81 @@
+package world;
+
+import java.util.HashMap;
+
+import tiles.MapTile;
+import utilities.Coordinate;
+
+/**
+ * Read-only window onto the tiles the car can see, i.e. those within VIEW_SQUARE tiles of it in either direction.
+ *
+ * Each car has one view, which follows the car as it moves and reads the world's tiles as they are asked for, so using
+ * it allocates nothing and costs the same however far the car can see.
+ */
+public class CarView {
+
+	private final Car car;
+
+	CarView(Car car) {
+		this.car = car;
+	}
+
+	/**
+	 * Number of tiles the car can see in each direction
+	 */
+	public int getViewSquare() {
+		return Car.VIEW_SQUARE;
+	}
+
+	/**
+	 * x coordinate of the tile the car is on, the centre of the view
+	 */
+	public int getCentreX() {
+		return Math.round(car.getX());
+	}
+
+	/**
+	 * y coordinate of the tile the car is on, the centre of the view
+	 */
+	public int getCentreY() {
+		return Math.round(car.getY());
+	}
+
+	/**
+	 * Check if the car can see a tile.
+	 */
+	public boolean contains(int x, int y) {
+		return Math.abs(x - getCentreX()) <= Car.VIEW_SQUARE && Math.abs(y - getCentreY()) <= Car.VIEW_SQUARE;
+	}
+
+	/**
+	 * Tile at a position on the map.
+	 * @return The tile, EMPTY off the map, or null if the car can't see the position
+	 */
+	public MapTile tileAt(int x, int y) {
+		return contains(x, y) ? car.lookUp(x, y) : null;
+	}
+
+	/**
+	 * Tile at an offset from the car.
+	 * @return The tile, EMPTY off the map, or null if the car can't see that far
+	 */
+	public MapTile tileAtOffset(int dx, int dy) {
+		return tileAt(getCentreX() + dx, getCentreY() + dy);
+	}
+
+	/**
+	 * Copy the view into a map from coordinates to tiles, as Car.getView() has always returned it.
+	 */
+	public HashMap<Coordinate,MapTile> toMap() {
+		int currentX = getCentreX();
+		int currentY = getCentreY();
+
+		HashMap<Coordinate,MapTile> subMap = new HashMap<Coordinate,MapTile>();
+		for(int x = currentX - Car.VIEW_SQUARE; x <= currentX+Car.VIEW_SQUARE; x++){
+			for(int y = currentY - Car.VIEW_SQUARE; y <= currentY+Car.VIEW_SQUARE; y++){
+				subMap.put(new Coordinate(x,y),car.lookUp(x,y));
+			}
+		}
+		return subMap;
+	}
+}
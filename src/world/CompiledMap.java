@@ -0,0 +1,324 @@
+package world;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+
+import tiles.GrassTrap;
+import tiles.HealthTrap;
+import tiles.LavaTrap;
+import tiles.MapTile;
+import tiles.MudTrap;
+import tiles.TrapTile;
+import utilities.Coordinate;
+
+/**
+ * A map compiled to the layout World keeps it in, so it can be loaded without parsing or building a tile per cell.
+ *
+ * The file is a header, the start and exits, a table of the traps sorted by cell with the key each holds, and then a
+ * byte per cell with the cell's MapTile.Type, row by row in the car's coordinates. The file is memory mapped and World
+ * reads the cells and traps straight from the mapping as the car goes near them, so loading costs the header however
+ * big the map is.
+ *
+ * load() compiles a TMX map the first time it is asked for, into a .cmap file next to it, and uses the compiled file
+ * from then on unless the TMX map has changed since. Compiled maps are only read, so any number of worlds can share
+ * one.
+ *
+ *     java world.CompiledMap map.tmx ...
+ *
+ * compiles maps ahead of time.
+ */
+public class CompiledMap {
+
+	public static final String EXTENSION = ".cmap";
+
+	private static final int MAGIC = 0x434D4150; // "CMAP"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 52;
+	private static final int TRAP_BYTES = 12;
+	private static final String[] TRAP_NAMES = {"lava", "health", "mud", "grass"};
+
+	private final int width;
+	private final int height;
+	private final int numKeys;
+	private final Coordinate start;
+	private final List<Coordinate> finish;
+	// The whole file, read only; the traps are read from it as they are needed rather than all at load
+	private final ByteBuffer buffer;
+	private final int trapsOffset;
+	private final int trapCount;
+	private final ByteBuffer cells;
+	// Length and modification time of the TMX map when it was compiled, 0 if it wasn't compiled from one
+	private final long sourceLength;
+	private final long sourceModified;
+
+	private CompiledMap(ByteBuffer buffer) throws IOException {
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Not a compiled map, or compiled by another version");
+		}
+		sourceLength = buffer.getLong(8);
+		sourceModified = buffer.getLong(16);
+		width = buffer.getInt(24);
+		height = buffer.getInt(28);
+		numKeys = buffer.getInt(32);
+		start = new Coordinate(buffer.getInt(36), buffer.getInt(40));
+		int finishCount = buffer.getInt(44);
+		int trapCount = buffer.getInt(48);
+		int cellsOffset = HEADER_BYTES + finishCount * 8 + trapCount * TRAP_BYTES;
+		if (buffer.capacity() != cellsOffset + (long) width * height) {
+			throw new IOException("Compiled map is truncated");
+		}
+
+		List<Coordinate> finish = new ArrayList<Coordinate>();
+		int offset = HEADER_BYTES;
+		for (int i = 0; i < finishCount; i++, offset += 8) {
+			finish.add(new Coordinate(buffer.getInt(offset), buffer.getInt(offset + 4)));
+		}
+		this.finish = Collections.unmodifiableList(finish);
+		this.trapsOffset = offset;
+		this.trapCount = trapCount;
+		this.buffer = buffer.asReadOnlyBuffer();
+		buffer.position(cellsOffset);
+		cells = buffer.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Load a TMX map from its compiled file, compiling it first if there is no compiled file or the map has changed
+	 * since it was compiled. If the compiled file can't be written the map is compiled in memory instead.
+	 * @param tmxPath Path to the .tmx file
+	 */
+	public static CompiledMap load(String tmxPath) throws IOException {
+		File source = new File(tmxPath);
+		File compiled = compiledFile(source);
+		if (compiled.isFile()) {
+			try {
+				CompiledMap map = map(compiled);
+				if (!source.exists() || map.sourceLength == source.length() && map.sourceModified == source.lastModified()) {
+					return map;
+				}
+			} catch (IOException e) {
+				// Unreadable or from another version, so compile it again
+			}
+		}
+		ByteBuffer buffer = compile(TmxMapReader.read(tmxPath), source.length(), source.lastModified());
+		try {
+			write(buffer, compiled);
+			return map(compiled);
+		} catch (IOException e) {
+			buffer.rewind();
+			return new CompiledMap(buffer);
+		}
+	}
+
+	/**
+	 * Load a compiled map file as it is, without checking it against a TMX map.
+	 */
+	public static CompiledMap map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return new CompiledMap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Where the compiled file of a TMX map is kept: next to it, with the .tmx replaced by .cmap.
+	 */
+	public static File compiledFile(File tmx) {
+		String name = tmx.getName();
+		if (name.endsWith(".tmx")) name = name.substring(0, name.length() - 4);
+		return new File(tmx.getAbsoluteFile().getParentFile(), name + EXTENSION);
+	}
+
+	/**
+	 * Compile a generated map and write it to a file.
+	 */
+	public static void write(GeneratedMap generated, File file) throws IOException {
+		write(compile(generated), file);
+	}
+
+	/**
+	 * Compile a generated map in memory.
+	 */
+	public static CompiledMap of(GeneratedMap generated) {
+		try {
+			return new CompiledMap(compile(generated));
+		} catch (IOException e) {
+			throw new IllegalStateException("Compiled map could not be read back", e);
+		}
+	}
+
+	private static ByteBuffer compile(GeneratedMap generated) {
+		return compile(generated.getWidth(), generated.getHeight(), generated::newTile,
+				generated.getStart(), generated.getFinish(), generated.getNumKeys(), 0, 0);
+	}
+
+	private static ByteBuffer compile(TmxMapReader reader, long sourceLength, long sourceModified) {
+		Map<Coordinate,MapTile> tiles = reader.getTiles();
+		return compile(reader.getWidth(), reader.getHeight(), (x, y) -> tiles.get(new Coordinate(x, y)),
+				reader.getStart(), reader.getFinish(), reader.getNumKeys(), sourceLength, sourceModified);
+	}
+
+	/**
+	 * @param tiles Tile at each x and y, or null where there is none
+	 */
+	private static ByteBuffer compile(int width, int height, BiFunction<Integer,Integer,MapTile> tiles,
+			Coordinate start, List<Coordinate> finish, int numKeys, long sourceLength, long sourceModified) {
+		byte[] types = new byte[width * height];
+		TreeMap<Integer,TrapTile> traps = new TreeMap<Integer,TrapTile>();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				MapTile tile = tiles.apply(x, y);
+				if (tile == null) tile = MapTile.shared(MapTile.Type.EMPTY);
+				types[y * width + x] = (byte) tile.getType().ordinal();
+				if (tile.isType(MapTile.Type.TRAP)) traps.put(y * width + x, (TrapTile) tile);
+			}
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + finish.size() * 8 + traps.size() * TRAP_BYTES
+				+ types.length);
+		buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceLength).putLong(sourceModified);
+		buffer.putInt(width).putInt(height).putInt(numKeys).putInt(start.x).putInt(start.y);
+		buffer.putInt(finish.size()).putInt(traps.size());
+		for (Coordinate coord : finish) {
+			buffer.putInt(coord.x).putInt(coord.y);
+		}
+		for (Map.Entry<Integer,TrapTile> trap : traps.entrySet()) {
+			TrapTile tile = trap.getValue();
+			buffer.putInt(trap.getKey()).putInt(trapKind(tile))
+					.putInt(tile instanceof LavaTrap ? ((LavaTrap) tile).getKey() : 0);
+		}
+		buffer.put(types);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Write through a temporary file, so that another thread or run never maps a half written file.
+	 */
+	private static void write(ByteBuffer buffer, File file) throws IOException {
+		File temporary = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temporary.delete();
+		}
+	}
+
+	private static int trapKind(TrapTile tile) {
+		for (int i = 0; i < TRAP_NAMES.length; i++) {
+			if (TRAP_NAMES[i].equals(tile.getTrap())) return i;
+		}
+		throw new IllegalArgumentException("Can't compile a " + tile.getTrap() + " trap");
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getNumKeys() {
+		return numKeys;
+	}
+
+	/**
+	 * Start in the car's coordinates
+	 */
+	public Coordinate getStart() {
+		return start;
+	}
+
+	/**
+	 * Exits in the car's coordinates
+	 */
+	public List<Coordinate> getFinish() {
+		return finish;
+	}
+
+	/**
+	 * The MapTile.Type ordinal of every cell, row by row from y = 0, read only.
+	 */
+	ByteBuffer getCells() {
+		return cells.duplicate();
+	}
+
+	int getTrapCount() {
+		return trapCount;
+	}
+
+	/**
+	 * Cell of the i-th trap. Traps are in ascending order of cell.
+	 */
+	int getTrapCell(int i) {
+		return buffer.getInt(trapsOffset + i * TRAP_BYTES);
+	}
+
+	/**
+	 * Index of the first trap at or after a cell, or getTrapCount() if there is none.
+	 */
+	int firstTrapFrom(int cell) {
+		int low = 0;
+		int high = trapCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getTrapCell(middle) < cell) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * New instance of the i-th trap, for a world to keep.
+	 * @param first Whether this is the first instance the world makes of it, the only one whose key is announced
+	 */
+	TrapTile newTrap(int i, boolean first) {
+		int offset = trapsOffset + i * TRAP_BYTES;
+		switch (buffer.getInt(offset + 4)) {
+			case 0:
+				int key = buffer.getInt(offset + 8);
+				if (!first) return new LavaTrap(key);
+				LavaTrap lava = new LavaTrap();
+				if (key != 0) lava.setKey(key);
+				return lava;
+			case 1:
+				return new HealthTrap();
+			case 2:
+				return new MudTrap();
+			default:
+				return new GrassTrap();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: CompiledMap map.tmx ...");
+			System.exit(2);
+		}
+		for (String path : args) {
+			File source = new File(path);
+			ByteBuffer buffer = compile(TmxMapReader.read(path), source.length(), source.lastModified());
+			write(buffer, compiledFile(source));
+			System.out.println(path + " -> " + compiledFile(source));
+		}
+	}
+}
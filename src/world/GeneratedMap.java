@@ -0,0 +1,210 @@
+package world;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import tiles.GrassTrap;
+import tiles.HealthTrap;
+import tiles.LavaTrap;
+import tiles.MapTile;
+import tiles.MudTrap;
+import utilities.Coordinate;
+
+/**
+ * A map made by MapGenerator, held as one byte per cell so that even the largest maps fit in memory. It can be driven
+ * on by passing it straight to World, or written out as a TMX map with the same layers and tilesets as the bundled
+ * maps.
+ *
+ * Cells are in the car's coordinates, row by row from y = 0.
+ */
+public class GeneratedMap {
+
+	public static final byte WALL = 0;
+	public static final byte ROAD = 1;
+	public static final byte START = 2;
+	public static final byte FINISH = 3;
+	public static final byte LAVA = 4;
+	public static final byte HEALTH = 5;
+	public static final byte MUD = 6;
+	public static final byte GRASS = 7;
+
+	// Tile gids when the tilesets are listed in this order: meta, road, traps, wallsandroofs
+	private static final String[] TILESETS = {"meta.tsx", "road.tsx", "traps.tsx", "wallsandroofs.tsx"};
+	private static final int[] FIRST_GIDS = {1, 3, 4, 196};
+	private static final int EXIT_GID = 1;
+	private static final int START_GID = 2;
+	private static final int ROAD_GID = 3;
+	private static final int MUD_GID = 4;
+	private static final int GRASS_GID = 4 + 6;
+	private static final int HEALTH_GID = 4 + 58;
+	private static final int LAVA_GID = 4 + 152;
+	// Lava tiles of the traps tileset holding keys 1 to 6
+	private static final int[] KEY_GIDS = {4 + 156, 4 + 157, 4 + 172, 4 + 173, 4 + 188, 4 + 189};
+	private static final int WALL_GID = 196 + 83;
+	private static final String[] LAYER_NAME = {"Road","Wall","Trap","Utility"};
+
+	private final int width;
+	private final int height;
+	private final byte[] cells;
+	// Cell of each key, key k at index k - 1
+	private final int[] keyCells;
+
+	GeneratedMap(int width, int height, byte[] cells, int[] keyCells) {
+		this.width = width;
+		this.height = height;
+		this.cells = cells;
+		this.keyCells = keyCells;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getNumKeys() {
+		return keyCells.length;
+	}
+
+	/**
+	 * What is at a cell, one of the constants of this class.
+	 */
+	public byte getCell(int x, int y) {
+		return cells[y * width + x];
+	}
+
+	/**
+	 * Key held by the lava at a cell, or 0 if it holds none.
+	 */
+	public int getKey(int x, int y) {
+		int cell = y * width + x;
+		for (int i = 0; i < keyCells.length; i++) {
+			if (keyCells[i] == cell) return i + 1;
+		}
+		return 0;
+	}
+
+	public Coordinate getStart() {
+		for (int cell = 0; cell < cells.length; cell++) {
+			if (cells[cell] == START) return new Coordinate(cell % width, cell / width);
+		}
+		return null;
+	}
+
+	public List<Coordinate> getFinish() {
+		List<Coordinate> finish = new ArrayList<Coordinate>();
+		for (int cell = 0; cell < cells.length; cell++) {
+			if (cells[cell] == FINISH) finish.add(new Coordinate(cell % width, cell / width));
+		}
+		return finish;
+	}
+
+	/**
+	 * Make the tile for a cell. Traps are new instances each time, every other tile is shared.
+	 */
+	MapTile newTile(int x, int y) {
+		switch (getCell(x, y)) {
+			case ROAD:
+				return MapTile.shared(MapTile.Type.ROAD);
+			case START:
+				return MapTile.shared(MapTile.Type.START);
+			case FINISH:
+				return MapTile.shared(MapTile.Type.FINISH);
+			case LAVA:
+				LavaTrap lava = new LavaTrap();
+				int key = getKey(x, y);
+				if (key != 0) lava.setKey(key);
+				return lava;
+			case HEALTH:
+				return new HealthTrap();
+			case MUD:
+				return new MudTrap();
+			case GRASS:
+				return new GrassTrap();
+			default:
+				return MapTile.shared(MapTile.Type.WALL);
+		}
+	}
+
+	/**
+	 * Write the map as a CSV encoded TMX map, loadable by libGDX and TmxMapReader like the bundled maps.
+	 * @param file File to write
+	 * @param tilesetDir Directory holding the bundled tilesets, written relative to the map's directory
+	 * @throws IllegalStateException if the map has more keys than the tilesets have key tiles
+	 */
+	public void writeTmx(File file, File tilesetDir) throws IOException {
+		if (keyCells.length > KEY_GIDS.length) {
+			throw new IllegalStateException("The tilesets only have tiles for " + KEY_GIDS.length + " keys");
+		}
+		File mapDir = file.getAbsoluteFile().getParentFile();
+		String tilesetPath = mapDir.toPath().relativize(tilesetDir.getAbsoluteFile().toPath()).toString()
+				.replace(File.separatorChar, '/');
+		if (!tilesetPath.isEmpty()) tilesetPath += "/";
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			out.write("<map version=\"1.2\" tiledversion=\"1.2.0\" orientation=\"orthogonal\" renderorder=\"right-down\" width=\""
+					+ width + "\" height=\"" + height + "\" tilewidth=\"32\" tileheight=\"32\" infinite=\"0\" nextlayerid=\""
+					+ (LAYER_NAME.length + 1) + "\" nextobjectid=\"1\">\n");
+			for (int i = 0; i < TILESETS.length; i++) {
+				out.write(" <tileset firstgid=\"" + FIRST_GIDS[i] + "\" source=\"" + tilesetPath + TILESETS[i] + "\"/>\n");
+			}
+			for (int i = 0; i < LAYER_NAME.length; i++) {
+				out.write(" <layer id=\"" + (i + 1) + "\" name=\"" + LAYER_NAME[i] + "\" width=\"" + width
+						+ "\" height=\"" + height + "\">\n");
+				out.write("  <data encoding=\"csv\">\n");
+				// TMX rows run top to bottom
+				for (int row = 0; row < height; row++) {
+					int y = height - 1 - row;
+					StringBuilder line = new StringBuilder(width * 4);
+					for (int x = 0; x < width; x++) {
+						line.append(gid(LAYER_NAME[i], x, y));
+						if (x + 1 < width || row + 1 < height) line.append(',');
+					}
+					line.append('\n');
+					out.write(line.toString());
+				}
+				out.write("</data>\n");
+				out.write(" </layer>\n");
+			}
+			out.write("</map>\n");
+		}
+	}
+
+	/**
+	 * Gid of a cell's tile on a layer, or 0 if the cell has nothing on it. Traps, start and exits have road under them.
+	 */
+	private int gid(String layerName, int x, int y) {
+		byte cell = getCell(x, y);
+		switch (layerName) {
+			case "Road":
+				return cell == WALL ? 0 : ROAD_GID;
+			case "Wall":
+				return cell == WALL ? WALL_GID : 0;
+			case "Utility":
+				return cell == START ? START_GID : cell == FINISH ? EXIT_GID : 0;
+			default:
+				switch (cell) {
+					case LAVA:
+						int key = getKey(x, y);
+						return key == 0 ? LAVA_GID : KEY_GIDS[key - 1];
+					case HEALTH:
+						return HEALTH_GID;
+					case MUD:
+						return MUD_GID;
+					case GRASS:
+						return GRASS_GID;
+					default:
+						return 0;
+				}
+		}
+	}
+}
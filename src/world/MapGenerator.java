@@ -0,0 +1,274 @@
+package world;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Makes maps of any size from a seed, for seeing how controllers and searches scale beyond the bundled maps. The same
+ * seed and settings always make the same map.
+ *
+ * The map is a grid of square rooms a corridor wide, separated by walls a tile thick and joined into a maze by a
+ * random spanning tree, so every room can be reached from every other. The corridor density is the chance that each
+ * wall between neighbouring rooms the tree leaves standing is knocked through as well, from 0 for a maze with one way
+ * between any two rooms to 1 for an open grid. The start, exits and key lava are then put on random road tiles, and
+ * traps are scattered over the rest of the road in the given mix.
+ *
+ *     java world.MapGenerator [-size WxH] [-seed n] [-corridor width] [-density d] [-traps fraction]
+ *                             [-mix lava,health,mud,grass] [-keys n] [-exits n] [-tilesets dir] map.tmx|map.cmap
+ *
+ * A map written to a .cmap file is written compiled, see CompiledMap.
+ *
+ * Maps can also be given to HeadlessSimulation and Tournament as gen:WxH:seed, which generates them in memory with
+ * the default settings.
+ */
+public class MapGenerator {
+
+	public static final String SPEC_PREFIX = "gen:";
+
+	private int corridorWidth = 2;
+	private double corridorDensity = 0.3;
+	private double trapDensity = 0.1;
+	// Relative amounts of lava, health, mud and grass among the traps
+	private double[] trapMix = {4, 2, 1, 1};
+	private int numKeys = 3;
+	private int numExits = 1;
+
+	/**
+	 * @param width Number of tiles the road of each corridor is across, at least 1
+	 */
+	public void setCorridorWidth(int width) {
+		if (width < 1) throw new IllegalArgumentException("Corridor width must be at least 1");
+		corridorWidth = width;
+	}
+
+	/**
+	 * @param density Chance of each wall between rooms not needed for the maze being opened, from 0 to 1
+	 */
+	public void setCorridorDensity(double density) {
+		if (density < 0 || density > 1) throw new IllegalArgumentException("Corridor density must be from 0 to 1");
+		corridorDensity = density;
+	}
+
+	/**
+	 * @param density Chance of each road tile being a trap, from 0 to 1
+	 */
+	public void setTrapDensity(double density) {
+		if (density < 0 || density > 1) throw new IllegalArgumentException("Trap density must be from 0 to 1");
+		trapDensity = density;
+	}
+
+	/**
+	 * Set the relative amounts of each kind of trap, e.g. 1, 1, 0, 0 for half lava and half health.
+	 */
+	public void setTrapMix(double lava, double health, double mud, double grass) {
+		if (lava < 0 || health < 0 || mud < 0 || grass < 0 || lava + health + mud + grass <= 0) {
+			throw new IllegalArgumentException("Trap mix must not be negative and must have some trap in it");
+		}
+		trapMix = new double[] {lava, health, mud, grass};
+	}
+
+	/**
+	 * @param keys Number of keys the car must collect, at least 1
+	 */
+	public void setKeys(int keys) {
+		if (keys < 1) throw new IllegalArgumentException("There must be at least one key");
+		numKeys = keys;
+	}
+
+	/**
+	 * @param exits Number of exit tiles, at least 1
+	 */
+	public void setExits(int exits) {
+		if (exits < 1) throw new IllegalArgumentException("There must be at least one exit");
+		numExits = exits;
+	}
+
+	/**
+	 * Make a map.
+	 * @param width Width of the map in tiles
+	 * @param height Height of the map in tiles
+	 * @param seed Seed deciding the layout
+	 * @throws IllegalArgumentException if the map is too small to hold a room, or the start, exits and keys
+	 */
+	public GeneratedMap generate(int width, int height, long seed) {
+		int spacing = corridorWidth + 1;
+		int columns = (width - 1) / spacing;
+		int rows = (height - 1) / spacing;
+		if (columns < 1 || rows < 1) {
+			throw new IllegalArgumentException("A " + width + "x" + height + " map is too small for corridors "
+					+ corridorWidth + " wide");
+		}
+		Random random = new Random(seed);
+		byte[] cells = new byte[width * height]; // All WALL
+
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				fill(cells, width, 1 + column * spacing, 1 + row * spacing, corridorWidth, corridorWidth);
+			}
+		}
+
+		// Randomised depth first search over the rooms, with an explicit stack as there can be millions of them
+		BitSet visited = new BitSet(columns * rows);
+		BitSet openRight = new BitSet(columns * rows);
+		BitSet openUp = new BitSet(columns * rows);
+		int[] stack = new int[columns * rows];
+		int[] choices = new int[4];
+		int size = 0;
+		int first = random.nextInt(columns * rows);
+		stack[size++] = first;
+		visited.set(first);
+		while (size > 0) {
+			int room = stack[size - 1];
+			int column = room % columns;
+			int row = room / columns;
+			int count = 0;
+			if (column + 1 < columns && !visited.get(room + 1)) choices[count++] = room + 1;
+			if (column > 0 && !visited.get(room - 1)) choices[count++] = room - 1;
+			if (row + 1 < rows && !visited.get(room + columns)) choices[count++] = room + columns;
+			if (row > 0 && !visited.get(room - columns)) choices[count++] = room - columns;
+			if (count == 0) {
+				size--;
+				continue;
+			}
+			int next = choices[random.nextInt(count)];
+			open(openRight, openUp, columns, room, next);
+			visited.set(next);
+			stack[size++] = next;
+		}
+		for (int room = 0; room < columns * rows; room++) {
+			if (room % columns + 1 < columns && !openRight.get(room) && random.nextDouble() < corridorDensity) {
+				openRight.set(room);
+			}
+			if (room / columns + 1 < rows && !openUp.get(room) && random.nextDouble() < corridorDensity) {
+				openUp.set(room);
+			}
+		}
+		for (int room = 0; room < columns * rows; room++) {
+			int x = 1 + (room % columns) * spacing;
+			int y = 1 + (room / columns) * spacing;
+			if (openRight.get(room)) fill(cells, width, x + corridorWidth, y, 1, corridorWidth);
+			if (openUp.get(room)) fill(cells, width, x, y + corridorWidth, corridorWidth, 1);
+		}
+
+		int roads = 0;
+		for (byte cell : cells) {
+			if (cell == GeneratedMap.ROAD) roads++;
+		}
+		if (roads < 1 + numExits + numKeys) {
+			throw new IllegalArgumentException("A " + width + "x" + height + " map has too little road for "
+					+ numExits + " exits and " + numKeys + " keys");
+		}
+		cells[randomRoad(cells, random)] = GeneratedMap.START;
+		for (int i = 0; i < numExits; i++) {
+			cells[randomRoad(cells, random)] = GeneratedMap.FINISH;
+		}
+		int[] keyCells = new int[numKeys];
+		for (int i = 0; i < numKeys; i++) {
+			keyCells[i] = randomRoad(cells, random);
+			cells[keyCells[i]] = GeneratedMap.LAVA;
+		}
+
+		double totalMix = trapMix[0] + trapMix[1] + trapMix[2] + trapMix[3];
+		byte[] trapKinds = {GeneratedMap.LAVA, GeneratedMap.HEALTH, GeneratedMap.MUD, GeneratedMap.GRASS};
+		for (int cell = 0; cell < cells.length; cell++) {
+			if (cells[cell] != GeneratedMap.ROAD || random.nextDouble() >= trapDensity) continue;
+			double pick = random.nextDouble() * totalMix;
+			int kind = 0;
+			while (kind < trapKinds.length - 1 && pick >= trapMix[kind]) {
+				pick -= trapMix[kind];
+				kind++;
+			}
+			cells[cell] = trapKinds[kind];
+		}
+		return new GeneratedMap(width, height, cells, keyCells);
+	}
+
+	/**
+	 * Make a map from a spec of the form gen:WxH:seed, with the default settings.
+	 */
+	public static GeneratedMap fromSpec(String spec) {
+		String[] parts = spec.startsWith(SPEC_PREFIX) ? spec.substring(SPEC_PREFIX.length()).split(":") : new String[0];
+		String[] size = parts.length > 0 ? parts[0].split("x") : new String[0];
+		if (parts.length > 2 || size.length != 2) {
+			throw new IllegalArgumentException("Expected " + SPEC_PREFIX + "WxH:seed, got " + spec);
+		}
+		long seed = parts.length > 1 ? Long.parseLong(parts[1]) : 0;
+		return new MapGenerator().generate(Integer.parseInt(size[0]), Integer.parseInt(size[1]), seed);
+	}
+
+	private static void open(BitSet openRight, BitSet openUp, int columns, int room, int next) {
+		if (next == room + 1) openRight.set(room);
+		else if (next == room - 1) openRight.set(next);
+		else if (next == room + columns) openUp.set(room);
+		else openUp.set(next);
+	}
+
+	private static void fill(byte[] cells, int width, int x, int y, int w, int h) {
+		for (int j = y; j < y + h; j++) {
+			for (int i = x; i < x + w; i++) {
+				cells[j * width + i] = GeneratedMap.ROAD;
+			}
+		}
+	}
+
+	private static int randomRoad(byte[] cells, Random random) {
+		while (true) {
+			int cell = random.nextInt(cells.length);
+			if (cells[cell] == GeneratedMap.ROAD) return cell;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		MapGenerator generator = new MapGenerator();
+		int width = 50;
+		int height = 50;
+		long seed = 0;
+		File tilesetDir = new File("assets/tilesets");
+		String output = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-size") && i + 1 < args.length) {
+					String[] size = args[++i].split("x");
+					width = Integer.parseInt(size[0]);
+					height = Integer.parseInt(size[1]);
+				} else if (args[i].equals("-seed") && i + 1 < args.length) {
+					seed = Long.parseLong(args[++i]);
+				} else if (args[i].equals("-corridor") && i + 1 < args.length) {
+					generator.setCorridorWidth(Integer.parseInt(args[++i]));
+				} else if (args[i].equals("-density") && i + 1 < args.length) {
+					generator.setCorridorDensity(Double.parseDouble(args[++i]));
+				} else if (args[i].equals("-traps") && i + 1 < args.length) {
+					generator.setTrapDensity(Double.parseDouble(args[++i]));
+				} else if (args[i].equals("-mix") && i + 1 < args.length) {
+					String[] mix = args[++i].split(",");
+					generator.setTrapMix(Double.parseDouble(mix[0]), Double.parseDouble(mix[1]),
+							Double.parseDouble(mix[2]), Double.parseDouble(mix[3]));
+				} else if (args[i].equals("-keys") && i + 1 < args.length) {
+					generator.setKeys(Integer.parseInt(args[++i]));
+				} else if (args[i].equals("-exits") && i + 1 < args.length) {
+					generator.setExits(Integer.parseInt(args[++i]));
+				} else if (args[i].equals("-tilesets") && i + 1 < args.length) {
+					tilesetDir = new File(args[++i]);
+				} else {
+					output = args[i];
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			output = null;
+		}
+		if (output == null) {
+			System.err.println("Usage: MapGenerator [-size WxH] [-seed n] [-corridor width] [-density d] [-traps fraction]");
+			System.err.println("                    [-mix lava,health,mud,grass] [-keys n] [-exits n] [-tilesets dir] map.tmx|map.cmap");
+			System.exit(2);
+		}
+		GeneratedMap generated = generator.generate(width, height, seed);
+		if (output.endsWith(CompiledMap.EXTENSION)) {
+			CompiledMap.write(generated, new File(output));
+		} else {
+			generated.writeTmx(new File(output), tilesetDir);
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package world;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import tiles.LavaTrap;
+import tiles.MapTile;
+import tiles.TrapTile;
+import utilities.Coordinate;
+
+/**
+ * Reads the tiles of a CSV encoded TMX map without going through libGDX, so maps can be loaded where there is no GL
+ * context (benchmarks, headless runs).
+ *
+ * Tiles are built the same way World does, but are keyed in the coordinates the car and controllers use, i.e. x to the
+ * right and y up from the bottom row of the map.
+ */
+public class TmxMapReader {
+
+	private static final String[] LAYER_NAME = {"Road","Utility","Trap","Wall"};
+	private static final long GID_MASK = 0x1FFFFFFFL; // Strips Tiled's flip flags
+
+	private final int width;
+	private final int height;
+	private final HashMap<Coordinate,MapTile> tiles = new HashMap<Coordinate,MapTile>();
+	private final List<Coordinate> finish = new ArrayList<Coordinate>();
+	private Coordinate start;
+	private int numKeys;
+
+	private TmxMapReader(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Read a TMX map and the tilesets it references.
+	 * @param path Path to the .tmx file
+	 * @return Reader holding the map's tiles
+	 * @throws IOException if the map or one of its tilesets cannot be read or parsed
+	 */
+	public static TmxMapReader read(String path) throws IOException {
+		File file = new File(path);
+		try {
+			DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Element root = builder.parse(file).getDocumentElement();
+			TmxMapReader reader = new TmxMapReader(
+					Integer.parseInt(root.getAttribute("width")), Integer.parseInt(root.getAttribute("height")));
+			TreeMap<Integer,Map<Integer,Map<String,String>>> tilesets = readTilesets(builder, file, root);
+			reader.readLayers(root, tilesets);
+			return reader;
+		} catch (ParserConfigurationException | SAXException | ReflectiveOperationException | RuntimeException e) {
+			throw new IOException("Could not read map " + path, e);
+		}
+	}
+
+	/**
+	 * Tile properties of every tileset, keyed on the tileset's first gid and then the tile's local id.
+	 */
+	private static TreeMap<Integer,Map<Integer,Map<String,String>>> readTilesets(DocumentBuilder builder, File file,
+			Element root) throws IOException, SAXException {
+		TreeMap<Integer,Map<Integer,Map<String,String>>> tilesets = new TreeMap<Integer,Map<Integer,Map<String,String>>>();
+		NodeList tilesetNodes = root.getElementsByTagName("tileset");
+		for (int i = 0; i < tilesetNodes.getLength(); i++) {
+			Element tileset = (Element) tilesetNodes.item(i);
+			int firstGid = Integer.parseInt(tileset.getAttribute("firstgid"));
+			if (tileset.hasAttribute("source")) {
+				Document external = builder.parse(new File(file.getParentFile(), tileset.getAttribute("source")));
+				tileset = external.getDocumentElement();
+			}
+			Map<Integer,Map<String,String>> properties = new HashMap<Integer,Map<String,String>>();
+			NodeList tileNodes = tileset.getElementsByTagName("tile");
+			for (int j = 0; j < tileNodes.getLength(); j++) {
+				Element tile = (Element) tileNodes.item(j);
+				Map<String,String> tileProperties = new HashMap<String,String>();
+				NodeList propertyNodes = tile.getElementsByTagName("property");
+				for (int k = 0; k < propertyNodes.getLength(); k++) {
+					Element property = (Element) propertyNodes.item(k);
+					tileProperties.put(property.getAttribute("name"), property.getAttribute("value"));
+				}
+				properties.put(Integer.parseInt(tile.getAttribute("id")), tileProperties);
+			}
+			tilesets.put(firstGid, properties);
+		}
+		return tilesets;
+	}
+
+	private void readLayers(Element root, TreeMap<Integer,Map<Integer,Map<String,String>>> tilesets)
+			throws ReflectiveOperationException, IOException {
+		TreeSet<Integer> keys = new TreeSet<Integer>();
+		NodeList layerNodes = root.getElementsByTagName("layer");
+		// Same layer order as World, so later layers replace tiles from earlier ones
+		for (String layerName : LAYER_NAME) {
+			for (int i = 0; i < layerNodes.getLength(); i++) {
+				Element layer = (Element) layerNodes.item(i);
+				if (!layerName.equals(layer.getAttribute("name"))) {
+					continue;
+				}
+				Element data = (Element) layer.getElementsByTagName("data").item(0);
+				if (!"csv".equals(data.getAttribute("encoding"))) {
+					throw new IOException("Only CSV encoded layers are supported, layer " + layerName + " is not");
+				}
+				String[] cells = data.getTextContent().trim().split("[,\\s]+");
+				for (int row = 0; row < height; row++) {
+					for (int x = 0; x < width; x++) {
+						long gid = Long.parseLong(cells[row * width + x]) & GID_MASK;
+						if (gid == 0) {
+							continue;
+						}
+						Map.Entry<Integer,Map<Integer,Map<String,String>>> tileset = tilesets.floorEntry((int) gid);
+						Map<String,String> properties = tileset == null ? null
+								: tileset.getValue().get((int) gid - tileset.getKey());
+						if (properties == null) {
+							properties = new HashMap<String,String>();
+						}
+						// TMX rows run top to bottom, the car's y axis runs bottom to top
+						Coordinate coord = new Coordinate(x, height - 1 - row);
+						tiles.put(coord, newTile(layerName, properties, coord, keys));
+					}
+				}
+			}
+		}
+		numKeys = keys.size();
+	}
+
+	private MapTile newTile(String layerName, Map<String,String> properties, Coordinate coord, TreeSet<Integer> keys)
+			throws ReflectiveOperationException {
+		switch (layerName) {
+			case "Trap":
+				MapTile trap = (TrapTile) Class.forName(MapTile.tileNameSpace + properties.get("type"))
+						.getDeclaredConstructor().newInstance();
+				if (trap instanceof LavaTrap && properties.containsKey("key")) {
+					int key = Integer.parseInt(properties.get("key"));
+					((LavaTrap) trap).setKey(key);
+					if (key != 0) keys.add(key);
+				}
+				return trap;
+			case "Utility":
+				if (properties.containsKey("exit")) {
+					finish.add(coord);
+					return MapTile.shared(MapTile.Type.FINISH);
+				}
+				start = coord;
+				return MapTile.shared(MapTile.Type.START);
+			case "Road":
+				return MapTile.shared(MapTile.Type.ROAD);
+			default:
+				return MapTile.shared(MapTile.Type.WALL);
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * All tiles of the map, including the traps that World.getMap() hides from controllers.
+	 */
+	public HashMap<Coordinate,MapTile> getTiles() {
+		return tiles;
+	}
+
+	public Coordinate getStart() {
+		return start;
+	}
+
+	public List<Coordinate> getFinish() {
+		return finish;
+	}
+
+	public int getNumKeys() {
+		return numKeys;
+	}
+}
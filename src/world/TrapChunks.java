@@ -0,0 +1,103 @@
+package world;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+import tiles.TrapTile;
+
+/**
+ * The trap instances of a compiled map, made a square chunk of cells at a time as the car comes near them.
+ *
+ * Only so many chunks are kept. When another is needed, the chunk furthest from it is dropped, which is the one
+ * furthest from the car as the car is where tiles are looked up. A dropped chunk is made again from the compiled map
+ * if the car comes back, with new trap instances, so the heap a world needs for its traps is bounded however big
+ * the map is. Maps that fit in MAX_CHUNKS chunks never drop any. Lava keys are only announced the first time their
+ * chunk is made.
+ *
+ * Used from the thread updating the world only.
+ */
+class TrapChunks {
+
+	static final int CHUNK_SHIFT = 6;
+	static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	static final int MAX_CHUNKS = 64;
+
+	private final CompiledMap map;
+	private final int width;
+	private final int height;
+	private final int chunksAcross;
+	// Traps of each loaded chunk by chunk number, indexed by the cell's row and column in the chunk
+	private final HashMap<Integer,TrapTile[]> chunks = new HashMap<Integer,TrapTile[]>();
+	// The car stays in one chunk for many lookups, so the last one is kept to hand
+	private int lastChunk = -1;
+	private TrapTile[] lastTraps;
+	// Chunks made at least once, whether or not they are still loaded
+	private final BitSet madeBefore = new BitSet();
+
+	TrapChunks(CompiledMap map) {
+		this.map = map;
+		this.width = map.getWidth();
+		this.height = map.getHeight();
+		this.chunksAcross = (width + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+	}
+
+	/**
+	 * Trap at a cell the compiled map has a trap in.
+	 */
+	TrapTile trapAt(int x, int y) {
+		int chunk = (y >> CHUNK_SHIFT) * chunksAcross + (x >> CHUNK_SHIFT);
+		if (chunk != lastChunk) {
+			TrapTile[] traps = chunks.get(chunk);
+			if (traps == null) {
+				traps = load(chunk);
+			}
+			lastChunk = chunk;
+			lastTraps = traps;
+		}
+		return lastTraps[((y & (CHUNK_SIZE - 1)) << CHUNK_SHIFT) + (x & (CHUNK_SIZE - 1))];
+	}
+
+	private TrapTile[] load(int chunk) {
+		if (chunks.size() >= MAX_CHUNKS) {
+			evictFurthestFrom(chunk);
+		}
+		int x0 = (chunk % chunksAcross) << CHUNK_SHIFT;
+		int y0 = (chunk / chunksAcross) << CHUNK_SHIFT;
+		int x1 = Math.min(width, x0 + CHUNK_SIZE);
+		int y1 = Math.min(height, y0 + CHUNK_SIZE);
+		TrapTile[] traps = new TrapTile[CHUNK_SIZE * CHUNK_SIZE];
+		int trapCount = map.getTrapCount();
+		boolean first = !madeBefore.get(chunk);
+		// Traps are sorted by cell, so each row of the chunk is a run of them
+		for (int y = y0; y < y1; y++) {
+			int rowEnd = y * width + x1;
+			for (int i = map.firstTrapFrom(y * width + x0); i < trapCount; i++) {
+				int cell = map.getTrapCell(i);
+				if (cell >= rowEnd) break;
+				traps[((y - y0) << CHUNK_SHIFT) + (cell - y * width - x0)] = map.newTrap(i, first);
+			}
+		}
+		chunks.put(chunk, traps);
+		madeBefore.set(chunk);
+		return traps;
+	}
+
+	private void evictFurthestFrom(int chunk) {
+		int column = chunk % chunksAcross;
+		int row = chunk / chunksAcross;
+		Integer furthest = null;
+		int furthestDistance = -1;
+		for (int other : chunks.keySet()) {
+			int distance = Math.max(Math.abs(other % chunksAcross - column), Math.abs(other / chunksAcross - row));
+			if (distance > furthestDistance) {
+				furthest = other;
+				furthestDistance = distance;
+			}
+		}
+		chunks.remove(furthest);
+		if (furthest == lastChunk) {
+			lastChunk = -1;
+			lastTraps = null;
+		}
+	}
+}
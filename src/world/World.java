@@ -1,8 +1,16 @@
 package world;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.lang.reflect.Constructor;
 
@@ -29,33 +37,98 @@ public class World {
 	private Car car;
 
 	// Car's controller
-	private static CarController controller;
+	private CarController controller;
 
-	private static TiledMap map;
+	private TiledMap map;
 
 	public static int MAP_PIXEL_SIZE = 32;
-	public static int MAP_HEIGHT;
-	public static int MAP_WIDTH;
+	private int mapHeight;
+	private int mapWidth;
 
 	private static String[] LAYER_NAME = {"Road","Utility","Trap","Wall"};
 
-	private static HashMap<Coordinate,MapTile> mapTiles = new HashMap<Coordinate,MapTile>();
-	private static HashMap<Coordinate,MapTile> providedMapTiles = new HashMap<Coordinate,MapTile>();
-	private static Coordinate start, carStart;
-	private static List<Coordinate> finish = new ArrayList<Coordinate>();
+	private static final MapTile.Type[] TILE_TYPES = MapTile.Type.values();
+	private static final byte EMPTY = (byte) MapTile.Type.EMPTY.ordinal();
+	private static final byte TRAP = (byte) MapTile.Type.TRAP.ordinal();
+
+	// The map as a dense grid in the car's coordinates, row by row from y = 0: the type of each cell, and the trap
+	// instances of the trap cells kept aside, sorted by cell. Every other cell is a shared tile of its type. The types
+	// of a compiled map are read from its memory mapped file.
+	// All of it belongs to this world, so several worlds can be run at once on different threads; trap instances
+	// are only changed while loading, so worlds built from the same reader can share them.
+	private ByteBuffer tileTypes;
+	private int[] trapCells;
+	private TrapTile[] trapTiles;
+	// Traps of a compiled map, made as the car comes near them instead of kept in trapTiles
+	private TrapChunks trapChunks;
+	private MapView mapView;
+	private Coordinate start, carStart;
+	private List<Coordinate> finish;
+
+	private boolean gameEnded = false;
+	private boolean gameWon = false;
 
 	public World(TiledMap map, String controllerName){
-		World.map = map;
+		this.map = map;
 		TiledMapTileLayer roadLayer = (TiledMapTileLayer) getTiledMap().getLayers().get("Road");
-		MAP_HEIGHT = roadLayer.getHeight();
-		MAP_WIDTH = roadLayer.getWidth();
+		mapHeight = roadLayer.getHeight();
+		mapWidth = roadLayer.getWidth();
 		int numKeys = initializeMap(map); // numKeys is the number of keys the car needs to find
 
-		car = new Car(new Sprite(new Texture("sprites/car2.png")), numKeys);
+		car = new Car(new Sprite(new Texture("sprites/car2.png")), numKeys, this);
 		// Set car size relative to the map scaling.
 		car.setSize(car.getWidth()*(1f/MAP_PIXEL_SIZE), car.getHeight()*(1f/MAP_PIXEL_SIZE));
 		car.setOriginCenter();
 
+		addController(controllerName);
+	}
+
+	/**
+	 * Build the world from a map read by TmxMapReader, without libGDX loading the map or the car's texture. Nothing
+	 * here needs a GL context, so the world can be updated where there is no display, but it can't be rendered.
+	 * @param reader Map to drive on
+	 * @param controllerName Class name of the car's controller
+	 */
+	public World(TmxMapReader reader, String controllerName){
+		this.map = null;
+		mapHeight = reader.getHeight();
+		mapWidth = reader.getWidth();
+		int numKeys = initializeMap(reader);
+
+		car = new Car(new Sprite(), numKeys, this);
+
+		addController(controllerName);
+	}
+
+	/**
+	 * Build the world from a map made by MapGenerator, headless like a world built from TmxMapReader.
+	 * @param generated Map to drive on
+	 * @param controllerName Class name of the car's controller
+	 */
+	public World(GeneratedMap generated, String controllerName){
+		this(CompiledMap.of(generated), controllerName);
+	}
+
+	/**
+	 * Build the world from a compiled map, headless like a world built from TmxMapReader. The world reads its cells
+	 * from the compiled map rather than copying them.
+	 * @param compiled Map to drive on
+	 * @param controllerName Class name of the car's controller
+	 */
+	public World(CompiledMap compiled, String controllerName){
+		this.map = null;
+		mapHeight = compiled.getHeight();
+		mapWidth = compiled.getWidth();
+		int numKeys = initializeMap(compiled);
+
+		car = new Car(new Sprite(), numKeys, this);
+		car.setSize(car.getWidth()*(1f/MAP_PIXEL_SIZE), car.getHeight()*(1f/MAP_PIXEL_SIZE));
+		car.setOriginCenter();
+
+		addController(controllerName);
+	}
+
+	private void addController(String controllerName) {
 		// Add the car controller
 		try {
 			Class<?> clazz = Class.forName(controllerName);
@@ -72,6 +145,8 @@ public class World {
 		// Need to check that the keys are a sequence
 		// ArrayList<Integer> keys = new ArrayList<Integer>();
 		TreeSet<Integer> keys = new TreeSet<Integer>();
+		TreeMap<Integer,TrapTile> traps = new TreeMap<Integer,TrapTile>();
+		clearMap();
 		// Iterate through all layer names
 		for(String layerName : LAYER_NAME){
 			// Set the layer
@@ -105,10 +180,10 @@ public class World {
 								break;
 							case "Utility":
 								if(cell.getTile().getProperties().get("exit") != null){
-									newTile = new MapTile(MapTile.Type.FINISH);
+									newTile = MapTile.shared(MapTile.Type.FINISH);
 									finish.add(newCoord);
 								} else {
-									newTile = new MapTile(MapTile.Type.START);
+									newTile = MapTile.shared(MapTile.Type.START);
 									assert(null == start);
 									carStart = new Coordinate(x, y);
 									start = newCoord;
@@ -116,17 +191,18 @@ public class World {
 								}
 								break;
 							case "Road":
-								newTile = new MapTile(MapTile.Type.ROAD);
+								newTile = MapTile.shared(MapTile.Type.ROAD);
 								break;
 							case "Wall":
-								newTile = new MapTile(MapTile.Type.WALL);
+								newTile = MapTile.shared(MapTile.Type.WALL);
 								break;
 						}
-						mapTiles.put(newCoord, newTile);
+						setTile(x, y, newTile, traps);
 					}
 				}
 			}
 		}
+		setTraps(traps);
 		// Check that keys are a sequence
 		assert(keys.last()==keys.size());
 		// System.out.println("keys: "+keys);
@@ -146,44 +222,227 @@ public class World {
 		car.draw(batch);
 	}
 
-	protected static Coordinate getCarStart() {
+	/**
+	 * End the game, which stops the car and the controller being updated.
+	 * @param won Whether the car escaped
+	 */
+	public void endGame(boolean won) {
+		gameEnded = true;
+		gameWon = won;
+	}
+
+	public boolean isGameEnded() {
+		return gameEnded;
+	}
+
+	public boolean isGameWon() {
+		return gameWon;
+	}
+
+	public int getWidth() {
+		return mapWidth;
+	}
+
+	public int getHeight() {
+		return mapHeight;
+	}
+
+	protected Coordinate getCarStart() {
 		return carStart;
 	}
 
-	protected static Coordinate getStart() {
+	protected Coordinate getStart() {
 		return start;
 	}
 
-	protected static List<Coordinate> getFinish() {
+	protected List<Coordinate> getFinish() {
 		return finish;
 	}
 
-	protected static TiledMap getTiledMap(){
+	protected TiledMap getTiledMap(){
 		return map;
 	}
 
-	protected static MapTile lookUp(double futureX, double futureY){
+	private int initializeMap(TmxMapReader reader) {
+		TreeMap<Integer,TrapTile> traps = new TreeMap<Integer,TrapTile>();
+		clearMap();
+		for (Map.Entry<Coordinate,MapTile> entry : reader.getTiles().entrySet()) {
+			setTile(entry.getKey().x, entry.getKey().y, entry.getValue(), traps);
+		}
+		setTraps(traps);
+		// The reader keys tiles as the car does, start and finish are kept as World's own loader keys them
+		carStart = reader.getStart();
+		start = new Coordinate(carStart.x, mapHeight - carStart.y);
+		for (Coordinate coord : reader.getFinish()) {
+			finish.add(new Coordinate(coord.x, mapHeight - coord.y));
+		}
+		return reader.getNumKeys();
+	}
+
+	private int initializeMap(CompiledMap compiled) {
+		// The compiled cells are used as they are, so nothing proportional to the map's size is done here
+		tileTypes = compiled.getCells();
+		trapCells = new int[0];
+		trapTiles = new TrapTile[0];
+		trapChunks = new TrapChunks(compiled);
+		finish = new ArrayList<Coordinate>();
+		carStart = compiled.getStart();
+		start = new Coordinate(carStart.x, mapHeight - carStart.y);
+		for (Coordinate coord : compiled.getFinish()) {
+			finish.add(new Coordinate(coord.x, mapHeight - coord.y));
+		}
+		return compiled.getNumKeys();
+	}
+
+	private void clearMap() {
+		byte[] types = new byte[mapWidth * mapHeight];
+		Arrays.fill(types, EMPTY);
+		tileTypes = ByteBuffer.wrap(types);
+		trapCells = new int[0];
+		trapTiles = new TrapTile[0];
+		start = null;
+		carStart = null;
+		finish = new ArrayList<Coordinate>();
+	}
+
+	/**
+	 * Put a tile in the grid while the map is being loaded, replacing whatever an earlier layer put there.
+	 * @param traps Trap instances loaded so far, by cell
+	 */
+	private void setTile(int x, int y, MapTile tile, TreeMap<Integer,TrapTile> traps) {
+		int cell = y * mapWidth + x;
+		tileTypes.put(cell, (byte) tile.getType().ordinal());
+		if (tile.isType(MapTile.Type.TRAP)) {
+			traps.put(cell, (TrapTile) tile);
+		} else {
+			traps.remove(cell);
+		}
+	}
+
+	private void setTraps(TreeMap<Integer,TrapTile> traps) {
+		trapCells = new int[traps.size()];
+		trapTiles = new TrapTile[traps.size()];
+		int i = 0;
+		for (Map.Entry<Integer,TrapTile> entry : traps.entrySet()) {
+			trapCells[i] = entry.getKey();
+			trapTiles[i] = entry.getValue();
+			i++;
+		}
+	}
+
+	protected MapTile lookUp(double futureX, double futureY){
 		int x = (int) Math.round(futureX);
-		int y =  MAP_HEIGHT - (int) Math.round(futureY); // Convert Y coordinate
-		Coordinate coord = new Coordinate(x,y);
-		return mapTiles.containsKey(coord) ? mapTiles.get(coord) : new MapTile(MapTile.Type.EMPTY);
+		int y = (int) Math.round(futureY);
+		if (x < 0 || x >= mapWidth || y < 0 || y >= mapHeight) {
+			return MapTile.shared(MapTile.Type.EMPTY);
+		}
+		int cell = y * mapWidth + x;
+		byte type = tileTypes.get(cell);
+		if (type == TRAP) {
+			return trapChunks != null ? trapChunks.trapAt(x, y) : trapTiles[Arrays.binarySearch(trapCells, cell)];
+		}
+		return MapTile.shared(TILE_TYPES[type]);
 	}
 
 	public Car getCar(){
 		return this.car;
 	}
 
-	public static HashMap<Coordinate,MapTile> getMap(){
-		if(providedMapTiles.keySet().size() == 0){ // Lazy initialisation
-			for(Coordinate coord : mapTiles.keySet()){
-				int reverseYAxis = MAP_HEIGHT-coord.y;
-				Coordinate newCoord = new Coordinate(coord.x, reverseYAxis);
-				MapTile current = mapTiles.get(coord);
-				if (current.isType(MapTile.Type.TRAP)) current = new MapTile(MapTile.Type.ROAD);
-				providedMapTiles.put(newCoord, current);
+	public CarController getController(){
+		return controller;
+	}
+
+	/**
+	 * Tile at a cell as getMap() gives it, with traps shown as road, or null where getMap() has no tile. Unlike
+	 * getMap() this makes no Coordinate, so it is the way to read a cell in a loop over a large map.
+	 */
+	public MapTile getMapTile(int x, int y){
+		if (x < 0 || x >= mapWidth || y < 0 || y >= mapHeight) return null;
+		byte type = tileTypes.get(y * mapWidth + x);
+		if (type == EMPTY) return null;
+		return MapTile.shared(type == TRAP ? MapTile.Type.ROAD : TILE_TYPES[type]);
+	}
+
+	/**
+	 * The whole map with traps shown as road, as a read-only view over the grid. Nothing is copied, however big the
+	 * map; cells no layer covers are left out. Copy it into a map of your own to change it.
+	 */
+	public Map<Coordinate,MapTile> getMap(){
+		if (mapView == null) mapView = new MapView();
+		return mapView;
+	}
+
+	/**
+	 * getMap() over the grid: lookups go through getMapTile() and iteration walks the cells row by row.
+	 */
+	private class MapView extends AbstractMap<Coordinate,MapTile> {
+		private int size = -1;
+		private Set<Map.Entry<Coordinate,MapTile>> entrySet;
+
+		@Override
+		public MapTile get(Object key) {
+			if (!(key instanceof Coordinate)) return null;
+			Coordinate coord = (Coordinate) key;
+			return getMapTile(coord.x, coord.y);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public int size() {
+			if (size < 0) {
+				int count = 0;
+				for (int cell = 0; cell < mapWidth * mapHeight; cell++) {
+					if (tileTypes.get(cell) != EMPTY) count++;
+				}
+				size = count;
+			}
+			return size;
+		}
+
+		@Override
+		public Set<Map.Entry<Coordinate,MapTile>> entrySet() {
+			if (entrySet == null) {
+				entrySet = new AbstractSet<Map.Entry<Coordinate,MapTile>>() {
+					@Override
+					public Iterator<Map.Entry<Coordinate,MapTile>> iterator() {
+						return new CellIterator();
+					}
+
+					@Override
+					public int size() {
+						return MapView.this.size();
+					}
+				};
 			}
+			return entrySet;
+		}
+	}
+
+	private class CellIterator implements Iterator<Map.Entry<Coordinate,MapTile>> {
+		private int next = nextCell(0);
+
+		@Override
+		public boolean hasNext() {
+			return next < mapWidth * mapHeight;
+		}
+
+		@Override
+		public Map.Entry<Coordinate,MapTile> next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			int x = next % mapWidth;
+			int y = next / mapWidth;
+			next = nextCell(next + 1);
+			return new AbstractMap.SimpleImmutableEntry<Coordinate,MapTile>(new Coordinate(x, y), getMapTile(x, y));
+		}
+
+		private int nextCell(int cell) {
+			while (cell < mapWidth * mapHeight && tileTypes.get(cell) == EMPTY) cell++;
+			return cell;
 		}
-		return providedMapTiles;
 	}
 
 }
\ No newline at end of file